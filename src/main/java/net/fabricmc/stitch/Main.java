@@ -35,6 +35,7 @@ public class Main {
     static {
         addCommand(new CommandAsmTrace());
         addCommand(new CommandGenerateIntermediary());
+        addCommand(new CommandGenerateJdkIndex());
         addCommand(new CommandGeneratePrefixRemapper());
         addCommand(new CommandMatcherToTiny());
         addCommand(new CommandMergeJar());
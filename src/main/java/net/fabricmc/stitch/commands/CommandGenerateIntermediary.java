@@ -20,6 +20,8 @@ import net.fabricmc.stitch.Command;
 import net.fabricmc.stitch.representation.*;
 
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Locale;
 
 public class CommandGenerateIntermediary extends Command {
@@ -29,7 +31,7 @@ public class CommandGenerateIntermediary extends Command {
 
     @Override
     public String getHelpString() {
-        return "<input-jar> <input-classpath> <mapping-name> [-t|--target-namespace <namespace>] [-p|--non-obfuscation-pattern <regex pattern>]...";
+        return "<input-jar> <input-classpath> <mapping-name> [-t|--target-namespace <namespace>] [-p|--non-obfuscation-pattern <regex pattern>]... [--threads <count>] [--related-methods] [--model-cache <dir> [--verify-incremental]]";
     }
 
     @Override
@@ -39,17 +41,12 @@ public class CommandGenerateIntermediary extends Command {
 
     @Override
     public void run(String[] args) throws Exception {
-        File file = new File(args[0]);
-        JarRootEntry jarEntry = new JarRootEntry(file);
-        try {
-            JarReader reader = new JarReader(jarEntry, new File(args[1]));
-            reader.apply();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
         GenState state = new GenState();
         boolean clearedPatterns = false;
+        int threads = 1;
+        Path modelCache = null;
+        boolean verifyIncremental = false;
+        boolean relatedMethods = false;
 
         for (int i = 3; i < args.length; i++) {
             switch (args[i].toLowerCase(Locale.ROOT)) {
@@ -67,10 +64,38 @@ public class CommandGenerateIntermediary extends Command {
                     state.addNonObfuscatedPattern(args[i + 1]);
                     i++;
                     break;
+                case "--threads":
+                    threads = Integer.parseInt(args[i + 1]);
+                    i++;
+                    break;
+                case "--model-cache":
+                    modelCache = Paths.get(args[i + 1]);
+                    i++;
+                    break;
+                case "--verify-incremental":
+                    verifyIncremental = true;
+                    break;
+                case "--related-methods":
+                    relatedMethods = true;
+                    break;
             }
         }
 
+        File file = new File(args[0]);
+        JarRootEntry jarEntry = new JarRootEntry(file);
+        try {
+            JarReader reader = new JarReader(jarEntry, new File(args[1]));
+            reader.setThreads(threads);
+            reader.setModelCache(modelCache);
+            reader.setVerifyIncremental(verifyIncremental);
+            reader.setCollectRelatedMethods(relatedMethods);
+            reader.apply();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
         System.err.println("Generating new mappings...");
+        state.setThreads(threads);
         state.generate(new File(args[2]), jarEntry, null);
         System.err.println("Done!");
     }
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.commands;
+
+import net.fabricmc.stitch.Command;
+import net.fabricmc.stitch.representation.JdkIndex;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.Path;
+
+public class CommandGenerateJdkIndex extends Command {
+    public CommandGenerateJdkIndex() {
+        super("generateJdkIndex");
+    }
+
+    @Override
+    public String getHelpString() {
+        return "<output-dir> [java-home]";
+    }
+
+    @Override
+    public boolean isArgumentCountValid(int count) {
+        return count == 1 || count == 2;
+    }
+
+    @Override
+    public void run(String[] args) throws Exception {
+        Path javaHome = null;
+
+        if (args.length > 1) {
+            File home = new File(args[1]);
+            if (!home.isDirectory()) {
+                throw new FileNotFoundException("Java home " + home + " could not be found!");
+            }
+            javaHome = home.toPath();
+        }
+
+        Path output = new File(args[0]).toPath().resolve(JdkIndex.getFileName(javaHome));
+        JdkIndex.generate(javaHome, output);
+        System.err.println("Wrote " + output + ", use it with -Dstitch.jdkIndex=" + output);
+    }
+}
@@ -17,10 +17,8 @@
 package net.fabricmc.stitch.commands;
 
 import net.fabricmc.mappings.EntryTriple;
-import net.fabricmc.mappings.FieldEntry;
-import net.fabricmc.mappings.Mappings;
-import net.fabricmc.mappings.MappingsProvider;
 import net.fabricmc.stitch.Command;
+import net.fabricmc.stitch.commands.tinyv1.TinyV1Reader;
 import net.fabricmc.stitch.util.FieldNameFinder;
 
 import java.io.*;
@@ -43,17 +41,14 @@ public class CommandProposeFieldNames extends Command {
 
     @Override
     public void run(String[] args) throws Exception {
-        Map<EntryTriple, String> fieldNamesO = new FieldNameFinder().findNames(new File(args[0]));
+        Map<EntryTriple, String> fieldNames = new FieldNameFinder().findNames(new File(args[0]));
 
-        System.err.println("Found " + fieldNamesO.size() + " interesting names.");
+        System.err.println("Found " + fieldNames.size() + " interesting names.");
 
         // i didn't fuss too much on this... this needs a rewrite once we get a mapping writer library
-        Map<EntryTriple, String> fieldNames = new HashMap<>();
-
-        Mappings mappings;
-        try (FileInputStream fileIn = new FileInputStream(new File(args[1]))) {
-            mappings = MappingsProvider.readTinyMappings(fileIn, false);
-        }
+        // official owners and descriptors, by name in the file's first namespace; only needed if that is not official
+        Map<String, String> officialClasses = null;
+        int officialPos = -1;
 
         try (FileInputStream fileIn = new FileInputStream(new File(args[1]));
              FileOutputStream fileOut = new FileOutputStream(new File(args[2]));
@@ -86,22 +81,23 @@ public class CommandProposeFieldNames extends Command {
                     }
 
                     if (!tabSplit[1].equals("official")) {
-                        for (FieldEntry e : mappings.getFieldEntries()) {
-                            EntryTriple officialFieldMapping = e.get("official");
-                            String name = fieldNamesO.get(officialFieldMapping);
-                            if (name != null) {
-                                fieldNames.put(e.get(tabSplit[1]), name);
-                            }
+                        officialPos = Arrays.asList(tabSplit).indexOf("official");
+                        if (officialPos < 0) {
+                            throw new RuntimeException("Could not find 'official' mapping position!");
                         }
-                    } else {
-                        fieldNames = fieldNamesO;
-                    }
 
-                    mappings = null; // save memory
+                        officialClasses = readClassNames(new File(args[1]), officialPos - 1);
+                    }
                 } else {
                     // second+ line
                     if (tabSplit[0].equals("FIELD")) {
-                        EntryTriple key = new EntryTriple(tabSplit[1], tabSplit[3], tabSplit[2]);
+                        EntryTriple key;
+                        if (officialClasses != null) {
+                            key = new EntryTriple(officialClasses.getOrDefault(tabSplit[1], tabSplit[1]), tabSplit[officialPos + 2],
+                                    TinyV1Reader.remapDescriptor(tabSplit[2], officialClasses));
+                        } else {
+                            key = new EntryTriple(tabSplit[1], tabSplit[3], tabSplit[2]);
+                        }
                         String value = tabSplit[headerPos + 2];
                         if (value.startsWith("field_") && fieldNames.containsKey(key)) {
                             tabSplit[headerPos + 2] = fieldNames.get(key);
@@ -124,4 +120,27 @@ public class CommandProposeFieldNames extends Command {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Maps the class names of the file's first namespace to those of the given one, without touching members.
+     */
+    private static Map<String, String> readClassNames(File file, int namespace) throws IOException {
+        Map<String, String> classNames = new HashMap<>();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            TinyV1Reader.read(reader, new TinyV1Reader.Visitor() {
+                @Override
+                public int[] start(List<String> namespaces) {
+                    return new int[] { 0, namespace };
+                }
+
+                @Override
+                public void visitClass(String[] names) {
+                    classNames.put(names[0], names[1]);
+                }
+            });
+        }
+
+        return classNames;
+    }
+}
@@ -16,19 +16,22 @@
 
 package net.fabricmc.stitch.commands;
 
-import net.fabricmc.mappings.EntryTriple;
-import net.fabricmc.mappings.Mappings;
-import net.fabricmc.mappings.MappingsProvider;
 import net.fabricmc.stitch.Command;
+import net.fabricmc.stitch.commands.tinyv1.TinyV1Reader;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.Locale;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class CommandReorderTiny extends Command {
     public CommandReorderTiny() {
@@ -45,12 +48,13 @@ public class CommandReorderTiny extends Command {
         return count >= 4;
     }
 
-    private int compareTriples(EntryTriple a, EntryTriple b) {
-        int c = a.getOwner().compareTo(b.getOwner());
+    // members are rows of owner, descriptor and then one name per requested namespace
+    private int compareMembers(String[] a, String[] b) {
+        int c = a[0].compareTo(b[0]);
         if (c == 0) {
-            c = a.getDesc().compareTo(b.getDesc());
+            c = a[1].compareTo(b[1]);
             if (c == 0) {
-                c = a.getName().compareTo(b.getName());
+                c = a[2].compareTo(b[2]);
             }
         }
         return c;
@@ -65,9 +69,64 @@ public class CommandReorderTiny extends Command {
 
         System.err.println("Loading mapping file...");
 
-        Mappings input;
-        try (FileInputStream stream = new FileInputStream(fileOld)) {
-            input = MappingsProvider.readTinyMappings(stream, false);
+        List<String[]> classes = new ArrayList<>();
+        List<String[]> fields = new ArrayList<>();
+        List<String[]> methods = new ArrayList<>();
+        boolean[] firstIsPrimary = new boolean[1];
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileOld))) {
+            TinyV1Reader.read(reader, new TinyV1Reader.Visitor() {
+                @Override
+                public int[] start(List<String> namespaces) throws IOException {
+                    // the file's first namespace comes along to translate owners and descriptors
+                    int[] selected = new int[names.length + 1];
+                    for (int i = 0; i < names.length; i++) {
+                        selected[i + 1] = namespaces.indexOf(names[i]);
+                        if (selected[i + 1] < 0) {
+                            throw new IOException("Namespace " + names[i] + " not found in " + namespaces);
+                        }
+                    }
+                    firstIsPrimary[0] = selected[1] == 0;
+                    return selected;
+                }
+
+                @Override
+                public void visitClass(String[] classNames) {
+                    classes.add(classNames);
+                }
+
+                @Override
+                public void visitField(String owner, String desc, String[] memberNames) {
+                    fields.add(toRow(owner, desc, memberNames));
+                }
+
+                @Override
+                public void visitMethod(String owner, String desc, String[] memberNames) {
+                    methods.add(toRow(owner, desc, memberNames));
+                }
+
+                private String[] toRow(String owner, String desc, String[] memberNames) {
+                    String[] row = new String[memberNames.length + 1];
+                    row[0] = owner;
+                    row[1] = desc;
+                    System.arraycopy(memberNames, 1, row, 2, memberNames.length - 1);
+                    return row;
+                }
+            });
+        }
+
+        if (!firstIsPrimary[0]) {
+            Map<String, String> classMap = new HashMap<>();
+            for (String[] classNames : classes) {
+                classMap.put(classNames[0], classNames[1]);
+            }
+
+            for (List<String[]> members : Arrays.asList(fields, methods)) {
+                for (String[] row : members) {
+                    row[0] = classMap.getOrDefault(row[0], row[0]);
+                    row[1] = TinyV1Reader.remapDescriptor(row[1], classMap);
+                }
+            }
         }
 
         System.err.println("Rewriting mappings...");
@@ -81,46 +140,32 @@ public class CommandReorderTiny extends Command {
                 firstLineBuilder.append('\t').append(name);
             }
             writer.write(firstLineBuilder.append('\n').toString());
-            input.getClassEntries().stream().sorted(Comparator.comparing((a) -> a.get(names[0]))).forEach((entry) -> {
-                try {
-                    StringBuilder s = new StringBuilder("CLASS");
-                    for (String name : names) {
-                        s.append('\t').append(entry.get(name));
-                    }
-                    writer.write(s.append('\n').toString());
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            });
-            input.getFieldEntries().stream().sorted((a, b) -> compareTriples(a.get(names[0]), b.get(names[0]))).forEach((entry) -> {
-                try {
-                    StringBuilder s = new StringBuilder("FIELD");
-                    EntryTriple first = entry.get(names[0]);
-                    s.append('\t').append(first.getOwner()).append('\t').append(first.getDesc());
-                    for (String name : names) {
-                        s.append('\t').append(entry.get(name).getName());
-                    }
-                    writer.write(s.append('\n').toString());
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            });
-            input.getMethodEntries().stream().sorted((a, b) -> compareTriples(a.get(names[0]), b.get(names[0]))).forEach((entry) -> {
-                try {
-                    StringBuilder s = new StringBuilder("METHOD");
-                    EntryTriple first = entry.get(names[0]);
-                    s.append('\t').append(first.getOwner()).append('\t').append(first.getDesc());
-                    for (String name : names) {
-                        s.append('\t').append(entry.get(name).getName());
-                    }
-                    writer.write(s.append('\n').toString());
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            });
+
+            classes.sort(Comparator.comparing((a) -> a[1]));
+            for (String[] classNames : classes) {
+                writeRow(writer, "CLASS", classNames, 1);
+            }
+
+            fields.sort(this::compareMembers);
+            for (String[] row : fields) {
+                writeRow(writer, "FIELD", row, 0);
+            }
+
+            methods.sort(this::compareMembers);
+            for (String[] row : methods) {
+                writeRow(writer, "METHOD", row, 0);
+            }
         }
 
         System.err.println("Done!");
     }
 
+    private static void writeRow(BufferedWriter writer, String kind, String[] row, int from) throws IOException {
+        StringBuilder s = new StringBuilder(kind);
+        for (int i = from; i < row.length; i++) {
+            s.append('\t').append(row[i]);
+        }
+        writer.write(s.append('\n').toString());
+    }
+
 }
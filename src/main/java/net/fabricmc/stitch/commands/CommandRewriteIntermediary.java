@@ -22,6 +22,8 @@ import net.fabricmc.stitch.representation.JarReader;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Locale;
 
 public class CommandRewriteIntermediary extends Command {
@@ -31,7 +33,7 @@ public class CommandRewriteIntermediary extends Command {
 
     @Override
     public String getHelpString() {
-        return "<jar> <jar-classpath> <old-mapping-file> <new-mapping-file> [--writeAll]";
+        return "<jar> <jar-classpath> <old-mapping-file> <new-mapping-file> [--writeAll] [--threads <count>] [--related-methods] [--model-cache <dir> [--verify-incremental]]";
     }
 
     @Override
@@ -41,25 +43,47 @@ public class CommandRewriteIntermediary extends Command {
 
     @Override
     public void run(String[] args) throws Exception {
-        File fileOld = new File(args[0]);
-        JarRootEntry jarOld = new JarRootEntry(fileOld);
-        try {
-            JarReader reader = new JarReader(jarOld, new File(args[1]));
-            reader.apply();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
         GenState state = new GenState();
+        int threads = 1;
+        Path modelCache = null;
+        boolean verifyIncremental = false;
+        boolean relatedMethods = false;
 
         for (int i = 3; i < args.length; i++) {
             switch (args[i].toLowerCase(Locale.ROOT)) {
                 case "--writeall":
                     state.setWriteAll(true);
                     break;
+                case "--threads":
+                    threads = Integer.parseInt(args[i + 1]);
+                    i++;
+                    break;
+                case "--model-cache":
+                    modelCache = Paths.get(args[i + 1]);
+                    i++;
+                    break;
+                case "--verify-incremental":
+                    verifyIncremental = true;
+                    break;
+                case "--related-methods":
+                    relatedMethods = true;
+                    break;
             }
         }
 
+        File fileOld = new File(args[0]);
+        JarRootEntry jarOld = new JarRootEntry(fileOld);
+        try {
+            JarReader reader = new JarReader(jarOld, new File(args[1]));
+            reader.setThreads(threads);
+            reader.setModelCache(modelCache);
+            reader.setVerifyIncremental(verifyIncremental);
+            reader.setCollectRelatedMethods(relatedMethods);
+            reader.apply();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
         System.err.println("Loading mapping file...");
         state.prepareRewrite(new File(args[2]));
 
@@ -69,6 +93,7 @@ public class CommandRewriteIntermediary extends Command {
         }
 
         System.err.println("Rewriting mappings...");
+        state.setThreads(threads);
         state.generate(outFile, jarOld, jarOld);
         System.err.println("Done!");
     }
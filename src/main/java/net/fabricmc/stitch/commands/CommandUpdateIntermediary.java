@@ -21,7 +21,13 @@ import net.fabricmc.stitch.representation.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class CommandUpdateIntermediary extends Command {
     public CommandUpdateIntermediary() {
@@ -30,7 +36,7 @@ public class CommandUpdateIntermediary extends Command {
 
     @Override
     public String getHelpString() {
-        return "<old-jar> <old-jar-classpath> <new-jar> <new-jar-classpath> <old-mapping-file> <new-mapping-file> <match-file> [-t|--target-namespace <namespace>] [-p|--non-obfuscation-pattern <regex pattern>] [-c|--conflicts <conflict choices>]";
+        return "<old-jar> <old-jar-classpath> <new-jar> <new-jar-classpath> <old-mapping-file> <new-mapping-file> <match-file> [-t|--target-namespace <namespace>] [-p|--non-obfuscation-pattern <regex pattern>] [-c|--conflicts <conflict choices>] [--conflict-file <file>] [--report-conflicts <file>] [--threads <count>] [--related-methods] [--model-cache <dir> [--verify-incremental]]";
     }
 
     @Override
@@ -40,26 +46,13 @@ public class CommandUpdateIntermediary extends Command {
 
     @Override
     public void run(String[] args) throws Exception {
-        File fileOld = new File(args[0]);
-        JarRootEntry jarOld = new JarRootEntry(fileOld);
-        try {
-            JarReader reader = new JarReader(jarOld, new File(args[1]));
-            reader.apply();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        File fileNew = new File(args[2]);
-        JarRootEntry jarNew = new JarRootEntry(fileNew);
-        try {
-            JarReader reader = new JarReader(jarNew, new File(args[3]));
-            reader.apply();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
         GenState state = new GenState();
         boolean clearedPatterns = false;
+        int threads = 1;
+        Path modelCache = null;
+        boolean verifyIncremental = false;
+        boolean relatedMethods = false;
+        File conflictReport = null;
 
         for (int i = 7; i < args.length; i++) {
             switch (args[i].toLowerCase(Locale.ROOT)) {
@@ -81,15 +74,96 @@ public class CommandUpdateIntermediary extends Command {
                 case "--conflicts":
                     state.setConflictChoices(args[i + 1]);
                     i++;
+                    break;
+                case "--conflict-file":
+                    state.setConflictFile(new File(args[i + 1]));
+                    i++;
+                    break;
+                case "--report-conflicts":
+                    conflictReport = new File(args[i + 1]);
+                    i++;
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[i + 1]);
+                    i++;
+                    break;
+                case "--model-cache":
+                    modelCache = Paths.get(args[i + 1]);
+                    i++;
+                    break;
+                case "--verify-incremental":
+                    verifyIncremental = true;
+                    break;
+                case "--related-methods":
+                    relatedMethods = true;
+                    break;
             }
         }
 
-        System.err.println("Loading remapping files...");
-        state.prepareUpdate(new File(args[4]), new File(args[6]));
+        // both classpaths usually hold the same libraries
+        ClassSummaryStore summaryStore = new ClassSummaryStore();
+
+        JarRootEntry jarOld = new JarRootEntry(new File(args[0]));
+        JarReader readerOld = new JarReader(jarOld, new File(args[1]));
+        JarRootEntry jarNew = new JarRootEntry(new File(args[2]));
+        JarReader readerNew = new JarReader(jarNew, new File(args[3]));
+
+        for (JarReader reader : new JarReader[] { readerOld, readerNew }) {
+            reader.setThreads(threads);
+            reader.setModelCache(modelCache);
+            reader.setVerifyIncremental(verifyIncremental);
+            reader.setCollectRelatedMethods(relatedMethods);
+            reader.setSummaryStore(summaryStore);
+        }
+
+        // the two jars and the mapping files are independent until generation
+        ExecutorService service = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> readOld = service.submit(() -> apply(readerOld));
+            Future<?> readNew = service.submit(() -> apply(readerNew));
+            Future<?> prepare = service.submit(() -> {
+                System.err.println("Loading remapping files...");
+                state.prepareUpdate(new File(args[4]), new File(args[6]));
+                return null;
+            });
+
+            await(readOld);
+            await(readNew);
+            await(prepare);
+        } finally {
+            service.shutdownNow();
+        }
+
+        state.setThreads(threads);
+        if (conflictReport != null) {
+            System.err.println("Looking for conflicts...");
+            int conflicts = state.reportConflicts(new File(args[5]), conflictReport, jarNew, jarOld);
+            System.err.println("Wrote " + conflicts + " conflicts to " + conflictReport);
+            return;
+        }
 
         System.err.println("Generating new mappings...");
         state.generate(new File(args[5]), jarNew, jarOld);
         System.err.println("Done!");
     }
 
+    private static void apply(JarReader reader) {
+        try {
+            reader.apply();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void await(Future<?> future) throws Exception {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
 }
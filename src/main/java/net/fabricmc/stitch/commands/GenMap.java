@@ -16,20 +16,120 @@
 
 package net.fabricmc.stitch.commands;
 import net.fabricmc.mappings.*;
+import net.fabricmc.stitch.commands.tinyv1.TinyV1Reader;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.function.BiConsumer;
 
+/**
+ * Class, field and method names from one namespace to another. Members are kept per owner in open-addressing tables
+ * probed by name and descriptor, so lookups do not allocate.
+ */
 public class GenMap {
     private static class Class {
         private final String name;
-        private final Map<EntryTriple, EntryTriple> fieldMaps = new HashMap<>();
-        private final Map<EntryTriple, EntryTriple> methodMaps = new HashMap<>();
+        private final MemberTable fields;
+        private final MemberTable methods;
 
         public Class(String name) {
+            this(name, 0, 0);
+        }
+
+        public Class(String name, int fieldCount, int methodCount) {
             this.name = name;
+            this.fields = new MemberTable(fieldCount);
+            this.methods = new MemberTable(methodCount);
+        }
+    }
+
+    /**
+     * Linear probing over parallel name, descriptor and value arrays, kept at most half full.
+     */
+    private static final class MemberTable {
+        private String[] names;
+        private String[] descs;
+        private EntryTriple[] values;
+        private int size;
+
+        MemberTable(int expected) {
+            int capacity = 4;
+            while (capacity < expected * 2) {
+                capacity <<= 1;
+            }
+
+            names = new String[capacity];
+            descs = new String[capacity];
+            values = new EntryTriple[capacity];
+        }
+
+        private static int hash(String name, String desc) {
+            int h = name.hashCode() * 31 + desc.hashCode();
+            return h ^ (h >>> 16);
+        }
+
+        private int indexOf(String name, String desc) {
+            int mask = names.length - 1;
+            int i = hash(name, desc) & mask;
+            while (names[i] != null) {
+                if (names[i].equals(name) && descs[i].equals(desc)) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            return -1 - i;
+        }
+
+        @Nullable
+        EntryTriple get(String name, String desc) {
+            int i = indexOf(name, desc);
+            return i >= 0 ? values[i] : null;
+        }
+
+        void put(String name, String desc, EntryTriple value) {
+            int i = indexOf(name, desc);
+            if (i >= 0) {
+                values[i] = value;
+                return;
+            }
+
+            if ((size + 1) * 2 > names.length) {
+                resize(names.length * 2);
+                i = indexOf(name, desc);
+            }
+
+            i = -1 - i;
+            names[i] = name;
+            descs[i] = desc;
+            values[i] = value;
+            size++;
+        }
+
+        private void resize(int capacity) {
+            String[] oldNames = names;
+            String[] oldDescs = descs;
+            EntryTriple[] oldValues = values;
+            names = new String[capacity];
+            descs = new String[capacity];
+            values = new EntryTriple[capacity];
+
+            int mask = capacity - 1;
+            for (int j = 0; j < oldNames.length; j++) {
+                if (oldNames[j] != null) {
+                    int i = hash(oldNames[j], oldDescs[j]) & mask;
+                    while (names[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    names[i] = oldNames[j];
+                    descs[i] = oldDescs[j];
+                    values[i] = oldValues[j];
+                }
+            }
         }
     }
 
@@ -43,59 +143,169 @@ public class GenMap {
     }
 
     public void addField(EntryTriple from, EntryTriple to) {
-        map.get(from.getOwner()).fieldMaps.put(from, to);
+        map.get(from.getOwner()).fields.put(from.getName(), from.getDesc(), to);
     }
 
     public void addMethod(EntryTriple from, EntryTriple to) {
-        map.get(from.getOwner()).methodMaps.put(from, to);
+        map.get(from.getOwner()).methods.put(from.getName(), from.getDesc(), to);
     }
 
+    /**
+     * Counts the members of every owner first, so each table is allocated once at its final size.
+     */
     public void load(Mappings mappings, String from, String to) {
+        Map<String, int[]> counts = new HashMap<>();
+
+        for (FieldEntry fieldEntry : mappings.getFieldEntries()) {
+            counts.computeIfAbsent(fieldEntry.get(from).getOwner(), (k) -> new int[2])[0]++;
+        }
+
+        for (MethodEntry methodEntry : mappings.getMethodEntries()) {
+            counts.computeIfAbsent(methodEntry.get(from).getOwner(), (k) -> new int[2])[1]++;
+        }
+
         for (ClassEntry classEntry : mappings.getClassEntries()) {
-            map.put(classEntry.get(from), new Class(classEntry.get(to)));
+            String owner = classEntry.get(from);
+            int[] count = counts.getOrDefault(owner, new int[2]);
+            map.put(owner, new Class(classEntry.get(to), count[0], count[1]));
         }
 
         for (FieldEntry fieldEntry : mappings.getFieldEntries()) {
-            map.computeIfAbsent(fieldEntry.get(from).getOwner(), Class::new).fieldMaps.put(fieldEntry.get(from), fieldEntry.get(to));
+            EntryTriple entry = fieldEntry.get(from);
+            getOrCreate(entry.getOwner(), counts).fields.put(entry.getName(), entry.getDesc(), fieldEntry.get(to));
         }
 
         for (MethodEntry methodEntry : mappings.getMethodEntries()) {
-            map.computeIfAbsent(methodEntry.get(from).getOwner(), Class::new).methodMaps.put(methodEntry.get(from), methodEntry.get(to));
+            EntryTriple entry = methodEntry.get(from);
+            getOrCreate(entry.getOwner(), counts).methods.put(entry.getName(), entry.getDesc(), methodEntry.get(to));
         }
     }
-    
-    @Nullable
-    public String getClass(String from) {
-        return map.containsKey(from) ? map.get(from).name : null;
+
+    /**
+     * Loads a tiny v1 file in one pass, handing each {@code # INTERMEDIARY-COUNTER} line to the consumer on the way.
+     * Gives the same result as {@link #load(Mappings, String, String)} on the parsed file.
+     */
+    public void loadTiny(BufferedReader reader, String from, String to, @Nullable BiConsumer<String, Integer> counterConsumer) throws IOException {
+        // member owners and descriptors are in the first namespace, so members wait until all classes are known
+        List<String[]> classes = new ArrayList<>();
+        List<String[]> fields = new ArrayList<>();
+        List<String[]> methods = new ArrayList<>();
+        int[] indices = new int[2];
+
+        TinyV1Reader.read(reader, new TinyV1Reader.Visitor() {
+            @Override
+            public int[] start(List<String> namespaces) throws IOException {
+                indices[0] = namespaces.indexOf(from);
+                indices[1] = namespaces.indexOf(to);
+                if (indices[0] < 0 || indices[1] < 0) {
+                    throw new IOException("Namespaces " + from + " and " + to + " not both found in " + namespaces);
+                }
+
+                // names arrive as first, from, to
+                return new int[] { 0, indices[0], indices[1] };
+            }
+
+            @Override
+            public void visitClass(String[] names) {
+                classes.add(names);
+            }
+
+            @Override
+            public void visitField(String owner, String desc, String[] names) {
+                fields.add(new String[] { owner, desc, names[1], names[2] });
+            }
+
+            @Override
+            public void visitMethod(String owner, String desc, String[] names) {
+                methods.add(new String[] { owner, desc, names[1], names[2] });
+            }
+
+            @Override
+            public void visitComment(String line) {
+                if (counterConsumer != null && line.startsWith("# INTERMEDIARY-COUNTER")) {
+                    String[] parts = line.split(" ");
+                    counterConsumer.accept(parts[2], Integer.parseInt(parts[3]));
+                }
+            }
+        });
+
+        Map<String, String> fromClasses = indices[0] > 0 ? new HashMap<>() : null;
+        Map<String, String> toClasses = indices[1] > 0 ? new HashMap<>() : null;
+        for (String[] names : classes) {
+            if (fromClasses != null) fromClasses.put(names[0], names[1]);
+            if (toClasses != null) toClasses.put(names[0], names[2]);
+        }
+
+        Map<String, int[]> counts = new HashMap<>();
+        for (String[] member : fields) {
+            counts.computeIfAbsent(remapClass(member[0], fromClasses), (k) -> new int[2])[0]++;
+        }
+        for (String[] member : methods) {
+            counts.computeIfAbsent(remapClass(member[0], fromClasses), (k) -> new int[2])[1]++;
+        }
+
+        for (String[] names : classes) {
+            int[] count = counts.getOrDefault(names[1], new int[2]);
+            map.put(names[1], new Class(names[2], count[0], count[1]));
+        }
+
+        for (String[] member : fields) {
+            getOrCreate(remapClass(member[0], fromClasses), counts).fields.put(member[2], remapDesc(member[1], fromClasses), toEntry(member, toClasses));
+        }
+        for (String[] member : methods) {
+            getOrCreate(remapClass(member[0], fromClasses), counts).methods.put(member[2], remapDesc(member[1], fromClasses), toEntry(member, toClasses));
+        }
     }
 
-    @Nullable
-    private EntryTriple get(EntryTriple entry, Function<Class, Map<EntryTriple, EntryTriple>> mapGetter) {
-        if (map.containsKey(entry.getOwner())) {
-            return mapGetter.apply(map.get(entry.getOwner())).get(entry);
+    private static EntryTriple toEntry(String[] member, @Nullable Map<String, String> classes) {
+        return new EntryTriple(remapClass(member[0], classes), member[3], remapDesc(member[1], classes));
+    }
+
+    private static String remapClass(String name, @Nullable Map<String, String> classes) {
+        return classes != null ? classes.getOrDefault(name, name) : name;
+    }
+
+    private static String remapDesc(String desc, @Nullable Map<String, String> classes) {
+        return classes != null ? TinyV1Reader.remapDescriptor(desc, classes) : desc;
+    }
+
+    // owners without a class entry map to themselves
+    private Class getOrCreate(String owner, Map<String, int[]> counts) {
+        Class c = map.get(owner);
+        if (c == null) {
+            int[] count = counts.get(owner);
+            c = new Class(owner, count[0], count[1]);
+            map.put(owner, c);
         }
+        return c;
+    }
 
-        return null;
+    @Nullable
+    public String getClass(String from) {
+        Class c = map.get(from);
+        return c != null ? c.name : null;
     }
 
     @Nullable
     public EntryTriple getField(String owner, String name, String desc) {
-        return get(new EntryTriple(owner, name, desc), (c) -> c.fieldMaps);
+        Class c = map.get(owner);
+        return c != null ? c.fields.get(name, desc) : null;
     }
 
     @Nullable
     public EntryTriple getField(EntryTriple entry) {
-        return get(entry, (c) -> c.fieldMaps);
+        return getField(entry.getOwner(), entry.getName(), entry.getDesc());
     }
 
     @Nullable
     public EntryTriple getMethod(String owner, String name, String desc) {
-        return get(new EntryTriple(owner, name, desc), (c) -> c.methodMaps);
+        Class c = map.get(owner);
+        return c != null ? c.methods.get(name, desc) : null;
     }
 
     @Nullable
     public EntryTriple getMethod(EntryTriple entry) {
-        return get(entry, (c) -> c.methodMaps);
+        return getMethod(entry.getOwner(), entry.getName(), entry.getDesc());
     }
 
     public static class Dummy extends GenMap {
@@ -17,7 +17,6 @@
 package net.fabricmc.stitch.commands;
 
 import net.fabricmc.mappings.EntryTriple;
-import net.fabricmc.mappings.MappingsProvider;
 import net.fabricmc.stitch.representation.*;
 import net.fabricmc.stitch.util.MatcherUtil;
 import net.fabricmc.stitch.util.Pair;
@@ -32,7 +31,12 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.regex.PatternSyntaxException;
 
 class GenState {
@@ -45,10 +49,16 @@ class GenState {
     private Scanner scanner = new Scanner(System.in);
 
     private String targetNamespace = "net/minecraft/";
-    private final List<Pattern> nonObfuscatedPatterns = new ArrayList<Pattern>();
-    private final List<Pattern> nonObfuscatedMemberPatterns = new ArrayList<>();
+    private final NamePatternSet nonObfuscatedPatterns = new NamePatternSet();
+    private final NamePatternSet nonObfuscatedMemberPatterns = new NamePatternSet();
 
     private final List<Integer> conflictChoices = new ArrayList<>();
+    private final Map<String, String> namedConflictChoices = new LinkedHashMap<>();
+    private final Set<String> usedConflictChoices = new HashSet<>();
+    // collects conflicts instead of resolving them while reporting
+    private List<String> conflictReport;
+    private int threads = 1;
+    private LoadedMappings loadedMappings;
 
     public GenState() {
 //        // Default obfuscation. Minecraft classes with a lowercase name are always obfuscated.
@@ -71,6 +81,45 @@ class GenState {
         }
     }
 
+    /**
+     * Loads conflict choices keyed by the conflicting method, as written by {@link #reportConflicts}: one
+     * {@code <owner>.<name><descriptor>\t<chosen name>} line per conflict, '#' starting a comment. A joined method is
+     * keyed by the class that declared its family's entry. These take precedence over positional choices.
+     */
+    public void setConflictFile(File file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                int tab = line.indexOf('\t');
+                String choice = tab >= 0 ? line.substring(tab + 1).trim() : "";
+                if (choice.isEmpty()) {
+                    throw new IOException("No name chosen for conflict " + (tab >= 0 ? line.substring(0, tab) : line) + " in " + file);
+                }
+
+                String key = line.substring(0, tab);
+                if (namedConflictChoices.putIfAbsent(key, choice) != null) {
+                    throw new IOException("Duplicate conflict choice for " + key + " in " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the number of threads that look up inherited names ahead of the serial pass assigning new ones; the output
+     * does not depend on it.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1, got " + threads);
+        }
+
+        this.threads = threads;
+    }
+
     public void setWriteAll(boolean writeAll) {
         this.writeAll = writeAll;
     }
@@ -115,29 +164,69 @@ class GenState {
     }
 
     public void generate(File file, JarRootEntry jarEntry, JarRootEntry jarOld) throws IOException {
-        if (file.exists()) {
-            System.err.println("Target file exists - loading...");
-            newToIntermediary = new GenMap();
-            try (FileInputStream inputStream = new FileInputStream(file)) {
-                newToIntermediary.load(
-                        MappingsProvider.readTinyMappings(inputStream),
-                        "official",
-                        "intermediary"
-                );
-            }
-        }
+        loadTarget(file);
 
         try (FileWriter fileWriter = new FileWriter(file)) {
             try (BufferedWriter writer = new BufferedWriter(fileWriter)) {
                 writer.write("v1\tofficial\tintermediary\n");
 
+                Map<JarClassEntry, ClassPlan> plans = planClasses(jarOld, jarEntry);
                 for (JarClassEntry c : jarEntry.getClasses()) {
-                    addClass(writer, c, jarOld, jarEntry, this.targetNamespace);
+                    addClass(writer, c, plans, this.targetNamespace);
                 }
 
                 writeCounters(writer);
             }
         }
+
+        for (String key : namedConflictChoices.keySet()) {
+            if (!usedConflictChoices.contains(key)) {
+                System.err.println("Conflict choice for " + key + " was not needed");
+            }
+        }
+    }
+
+    /**
+     * Goes through a generation without writing anything and lists every method name conflict it meets in the report,
+     * in the format {@link #setConflictFile} reads once a name is filled in for each. The state has handed out
+     * counters afterwards, so it should not be used for a real generation. Returns the number of conflicts.
+     */
+    public int reportConflicts(File file, File report, JarRootEntry jarEntry, JarRootEntry jarOld) throws IOException {
+        loadTarget(file);
+
+        List<String> conflicts = new ArrayList<>();
+        conflictReport = conflicts;
+        try (BufferedWriter writer = new BufferedWriter(Writer.nullWriter())) {
+            Map<JarClassEntry, ClassPlan> plans = planClasses(jarOld, jarEntry);
+            for (JarClassEntry c : jarEntry.getClasses()) {
+                addClass(writer, c, plans, this.targetNamespace);
+            }
+        } finally {
+            conflictReport = null;
+        }
+
+        try (BufferedWriter writer = Files.newBufferedWriter(report.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("# Method name conflicts. Put the chosen name after the tab of each method line and pass this file\n");
+            writer.write("# with --conflict-file.\n");
+            for (String conflict : conflicts) {
+                writer.write(conflict);
+            }
+        }
+
+        return conflicts.size();
+    }
+
+    private void loadTarget(File file) throws IOException {
+        sources.clear();
+        matchingEntries.clear();
+        oldCandidates.clear();
+        namesListEntries.clear();
+        propagations.clear();
+
+        if (file.exists()) {
+            System.err.println("Target file exists - loading...");
+            newToIntermediary = loadMappings(file, null);
+        }
     }
 
     public static boolean isMappedClass(ClassStorage storage, JarClassEntry c) {
@@ -157,13 +246,12 @@ class GenState {
             return false;
         }
         boolean isEnum = (c.getAccess() & Opcodes.ACC_ENUM) != 0;
-        String patternInput = c.getFullyQualifiedName() + "/" + m.getKey();
         return !m.getName().equals("<clinit>")
                 && !m.getName().equals("<init>")
                 && (!m.getName().equals("main") || !m.getDescriptor().equals("([Ljava/lang/String;)V") || m.getAccess() != (Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC))
                 && (!isEnum || !isStandardEnumMethod(c.getFullyQualifiedName(), m))
-                && m.isSource(storage, c)
-                && !this.nonObfuscatedMemberPatterns.stream().anyMatch(pattern -> pattern.matcher(patternInput).matches());
+                && isSource(storage, c, m)
+                && !this.nonObfuscatedMemberPatterns.matchesMember(c.getFullyQualifiedName(), m.getKey());
     }
 
     public static boolean isUnmappedMethodName(String name) {
@@ -173,61 +261,52 @@ class GenState {
     private final Map<JarRecordComponentEntry, String> recordComponentNames = new IdentityHashMap<>();
 
     @Nullable
-    private String getFieldName(ClassStorage storage, JarClassEntry c, JarFieldEntry f) {
-        String patternInput = c.getFullyQualifiedName() + "/" + f.getKey();
-        if (this.nonObfuscatedMemberPatterns.stream().anyMatch(pattern -> pattern.matcher(patternInput).matches())) {
-            return null;
-        }
-
-        JarRecordComponentEntry recordComponent = c.getRecordComponent(f.getKey());
-        if (recordComponentNames.containsKey(recordComponent)) {
-            return recordComponentNames.get(recordComponent);
-        }
-
+    private EntryTriple findFieldEntry(JarClassEntry c, JarFieldEntry f) {
         if (newToIntermediary != null) {
             EntryTriple findEntry = newToIntermediary.getField(c.getFullyQualifiedName(), f.getName(), f.getDescriptor());
             if (findEntry != null) {
-                boolean promoteRecordComponent = recordComponent != null;
-                if (promoteRecordComponent ? findEntry.getName().startsWith("comp_") : findEntry.getName().startsWith("field_")) {
-                    if (promoteRecordComponent) {
-                        this.recordComponentNames.put(recordComponent, findEntry.getName());
-                    }
-                    return findEntry.getName();
-                } else {
-                    String newName = next(f, promoteRecordComponent ? "comp" : "field");
-                    if (promoteRecordComponent) {
-                        this.recordComponentNames.put(recordComponent, newName);
-                    }
-                    System.out.println(findEntry.getName() + " is now " + newName);
-                    return newName;
-                }
+                return findEntry;
             }
         }
 
         if (newToOld != null) {
             EntryTriple findEntry = newToOld.getField(c.getFullyQualifiedName(), f.getName(), f.getDescriptor());
             if (findEntry != null) {
-                findEntry = oldToIntermediary.getField(findEntry);
-                if (findEntry != null) {
-                    boolean promoteRecordComponent = recordComponent != null;
-                    if (promoteRecordComponent ? findEntry.getName().startsWith("comp_") : findEntry.getName().startsWith("field_")) {
-                        if (promoteRecordComponent) {
-                            this.recordComponentNames.put(recordComponent, findEntry.getName());
-                        }
-                        return findEntry.getName();
-                    } else {
-                        String newName = next(f, promoteRecordComponent ? "comp" : "field");
-                        if (promoteRecordComponent) {
-                            this.recordComponentNames.put(recordComponent, newName);
-                        }
-                        System.out.println(findEntry.getName() + " is now " + newName);
-                        return newName;
-                    }
-                }
+                return oldToIntermediary.getField(findEntry);
             }
         }
 
+        return null;
+    }
+
+    @Nullable
+    private String getFieldName(JarClassEntry c, JarFieldEntry f, boolean nonObfuscated, @Nullable EntryTriple findEntry) {
+        if (nonObfuscated) {
+            return null;
+        }
+
+        JarRecordComponentEntry recordComponent = c.getRecordComponent(f.getKey());
+        if (recordComponentNames.containsKey(recordComponent)) {
+            return recordComponentNames.get(recordComponent);
+        }
+
         boolean promoteRecordComponent = recordComponent != null;
+        if (findEntry != null) {
+            if (promoteRecordComponent ? findEntry.getName().startsWith("comp_") : findEntry.getName().startsWith("field_")) {
+                if (promoteRecordComponent) {
+                    this.recordComponentNames.put(recordComponent, findEntry.getName());
+                }
+                return findEntry.getName();
+            } else {
+                String newName = next(f, promoteRecordComponent ? "comp" : "field");
+                if (promoteRecordComponent) {
+                    this.recordComponentNames.put(recordComponent, newName);
+                }
+                System.out.println(findEntry.getName() + " is now " + newName);
+                return newName;
+            }
+        }
+
         String newName = next(f, promoteRecordComponent ? "comp" : "field");
         if (promoteRecordComponent) {
             recordComponentNames.put(recordComponent, newName);
@@ -237,11 +316,92 @@ class GenState {
 
     private final Map<JarMethodEntry, String> methodNames = new IdentityHashMap<>();
 
+    // Per-run answers to the hierarchy questions naming asks over and over. They only depend on the models, so each is
+    // worked out once per method family and shared by all its members; see getMemoKey.
+    private final Map<Object, Set<JarClassEntry>> sources = new IdentityHashMap<>();
+    private final Map<Object, List<JarClassEntry>> matchingEntries = new IdentityHashMap<>();
+    private final Map<Object, List<String[]>> oldCandidates = new IdentityHashMap<>();
+    private final Map<ClassStorage, Map<JarClassEntry, String>> namesListEntries = new IdentityHashMap<>();
+    private final Map<ClassStorage, Map<JarClassEntry, String>> propagations = new IdentityHashMap<>();
+
+    /**
+     * The family of a non-private, non-static method, whose members all reach the same matching entries, or the method
+     * itself otherwise. A method outside any family, like a private or static one, is declared by a single class.
+     */
+    private static Object getMemoKey(JarMethodEntry m) {
+        MethodFamily family = m.getFamily();
+        return family != null && !Access.isPrivateOrStatic(m.getAccess()) ? family : m;
+    }
+
+    private boolean isSource(ClassStorage storage, JarClassEntry c, JarMethodEntry m) {
+        return memo(sources, getMemoKey(m), (k) -> {
+            Set<JarClassEntry> members = StitchUtil.newIdentityHashSet();
+            if (k instanceof MethodFamily) {
+                for (JarClassEntry cc : ((MethodFamily) k).getClasses()) {
+                    if (cc.getMethod(m.getKey()).isSource(storage, cc)) {
+                        members.add(cc);
+                    }
+                }
+            } else if (m.isSource(storage, c)) {
+                members.add(c);
+            }
+            return members;
+        }).contains(c);
+    }
+
+    private List<JarClassEntry> getMatchingEntries(ClassStorage storage, JarClassEntry c, JarMethodEntry m) {
+        return memo(matchingEntries, getMemoKey(m), (k) -> m.getMatchingEntries(storage, c));
+    }
+
+    /**
+     * Looks up or computes a cached value. Planning runs on several threads, so the identity maps are only touched
+     * while holding their lock; the value is computed outside it and the first one stored wins.
+     */
+    private static <K, V> V memo(Map<K, V> cache, K key, Function<K, V> compute) {
+        V value;
+        synchronized (cache) {
+            value = cache.get(key);
+        }
+
+        if (value == null) {
+            value = compute.apply(key);
+            synchronized (cache) {
+                V previous = cache.putIfAbsent(key, value);
+                if (previous != null) {
+                    value = previous;
+                }
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * The intermediary names the old mappings have for the old method and the classes it matches, paired with the
+     * class description shown when names conflict.
+     */
+    private List<String[]> getOldCandidates(ClassStorage storageOld, JarClassEntry oldBase, JarMethodEntry oldM) {
+        return memo(oldCandidates, getMemoKey(oldM), (k) -> {
+            List<String[]> candidates = new ArrayList<>();
+            for (JarClassEntry ccc : getMatchingEntries(storageOld, oldBase, oldM)) {
+                EntryTriple findEntry = oldToIntermediary.getMethod(ccc.getFullyQualifiedName(), oldM.getName(), oldM.getDescriptor());
+                if (findEntry != null) {
+                    candidates.add(new String[] { findEntry.getName(), getNamesListEntry(storageOld, ccc) });
+                }
+            }
+            return candidates;
+        });
+    }
+
     private String getPropagation(ClassStorage storage, JarClassEntry classEntry) {
         if (classEntry == null) {
             return "";
         }
 
+        return memo(memo(propagations, storage, (k) -> new IdentityHashMap<>()), classEntry, (k) -> computePropagation(storage, classEntry));
+    }
+
+    private String computePropagation(ClassStorage storage, JarClassEntry classEntry) {
         StringBuilder builder = new StringBuilder(classEntry.getFullyQualifiedName());
         List<String> strings = new ArrayList<>();
         String scs = getPropagation(storage, classEntry.getSuperClass(storage));
@@ -271,12 +431,14 @@ class GenState {
     }
 
     private String getNamesListEntry(ClassStorage storage, JarClassEntry classEntry) {
-        StringBuilder builder = new StringBuilder(getPropagation(storage, classEntry));
-        if (classEntry.isInterface()) {
-            builder.append("(itf)");
-        }
+        return memo(memo(namesListEntries, storage, (k) -> new IdentityHashMap<>()), classEntry, (k) -> {
+            StringBuilder builder = new StringBuilder(getPropagation(storage, classEntry));
+            if (classEntry.isInterface()) {
+                builder.append("(itf)");
+            }
 
-        return builder.toString();
+            return builder.toString();
+        });
     }
 
     private Set<JarMethodEntry> findNames(ClassStorage storageOld, ClassStorage storageNew, JarClassEntry c, JarMethodEntry m, Map<String, Set<String>> names) {
@@ -296,7 +458,7 @@ class GenState {
             suffix += "(bridge)";
         }
 
-        List<JarClassEntry> ccList = m.getMatchingEntries(storageNew, c);
+        List<JarClassEntry> ccList = getMatchingEntries(storageNew, c, m);
 
         for (JarClassEntry cc : ccList) {
             EntryTriple findEntry = null;
@@ -319,13 +481,9 @@ class GenState {
                         JarClassEntry oldBase = storageOld.getClass(newToOldEntry.getOwner(), false);
                         if (oldBase != null) {
                             JarMethodEntry oldM = oldBase.getMethod(newToOldEntry.getName() + newToOldEntry.getDesc());
-                            List<JarClassEntry> cccList = oldM.getMatchingEntries(storageOld, oldBase);
 
-                            for (JarClassEntry ccc : cccList) {
-                                findEntry = oldToIntermediary.getMethod(ccc.getFullyQualifiedName(), oldM.getName(), oldM.getDescriptor());
-                                if (findEntry != null) {
-                                    names.computeIfAbsent(findEntry.getName(), (s) -> new TreeSet<>()).add(getNamesListEntry(storageOld, ccc) + suffix);
-                                }
+                            for (String[] candidate : getOldCandidates(storageOld, oldBase, oldM)) {
+                                names.computeIfAbsent(candidate[0], (s) -> new TreeSet<>()).add(candidate[1] + suffix);
                             }
                         }
                     }
@@ -340,9 +498,22 @@ class GenState {
         }
     }
 
+    /**
+     * Names a conflict after the declaration its family resolves to, so that the key does not depend on which member
+     * generation reaches first.
+     */
+    private static String getConflictKey(JarClassEntry c, JarMethodEntry m) {
+        MethodFamily family = m.getFamily();
+        if (family != null && family.getMethod() == m && family.getOwner() != null) {
+            c = family.getOwner();
+        }
+
+        return c.getFullyQualifiedName() + "." + m.getName() + m.getDescriptor();
+    }
+
     @Nullable
-    private String getMethodName(ClassStorage storageOld, ClassStorage storageNew, JarClassEntry c, JarMethodEntry m) {
-        if (!isObfuscatedMethod(storageNew, c, m)) {
+    private String getMethodName(JarClassEntry c, JarMethodEntry m, MethodPlan plan) {
+        if (!plan.obfuscated) {
             return null;
         }
 
@@ -355,9 +526,9 @@ class GenState {
             return recordComponentNames.get(recordComponent);
         }
 
-        if (newToOld != null || newToIntermediary != null) {
-            Map<String, Set<String>> names = new HashMap<>();
-            Set<JarMethodEntry> allEntries = findNames(storageOld, storageNew, c, m, names);
+        if (plan.names != null) {
+            Map<String, Set<String>> names = plan.names;
+            Set<JarMethodEntry> allEntries = plan.allEntries;
             for (JarMethodEntry mm : allEntries) {
                 if (methodNames.containsKey(mm)) {
                     return methodNames.get(mm);
@@ -365,9 +536,33 @@ class GenState {
             }
 
             if (names.size() > 1) {
-                System.out.println("Conflict detected - matched same target name!");
                 List<String> nameList = new ArrayList<>(names.keySet());
                 Collections.sort(nameList);
+                String key = getConflictKey(c, m);
+
+                // which methods conflict does not depend on the names picked, so any will do while reporting
+                String chosen = conflictReport != null ? nameList.get(0) : namedConflictChoices.get(key);
+                if (chosen != null) {
+                    if (conflictReport != null) {
+                        StringBuilder builder = new StringBuilder("# ").append(key).append('\n');
+                        for (String s : nameList) {
+                            builder.append("#   ").append(s).append(" <- ").append(StitchUtil.join(", ", names.get(s))).append('\n');
+                        }
+                        conflictReport.add(builder.append(key).append("\t\n").toString());
+                    } else if (names.containsKey(chosen)) {
+                        usedConflictChoices.add(key);
+                        System.out.println("Conflict for " + key + " resolved to " + chosen);
+                    } else {
+                        throw new RuntimeException("Conflict choice " + chosen + " for " + key + " is not one of " + nameList);
+                    }
+
+                    for (JarMethodEntry mm : allEntries) {
+                        methodNames.put(mm, chosen);
+                    }
+                    return chosen;
+                }
+
+                System.out.println("Conflict detected - matched same target name!");
 
                 for (int i = 0; i < nameList.size(); i++) {
                     String s = nameList.get(i);
@@ -431,42 +626,158 @@ class GenState {
         return newName;
     }
 
-    private void addClass(BufferedWriter writer, JarClassEntry c, ClassStorage storageOld, ClassStorage storage, String translatedPrefix) throws IOException {
+    /**
+     * Everything about a class that only depends on the models and the loaded mappings, worked out before any counter
+     * is handed out: whether it and its members keep their names, and the names found in the mappings. Member arrays
+     * follow the order of {@link JarClassEntry#getFields()} and {@link JarClassEntry#getMethods()}.
+     */
+    private static final class ClassPlan {
+        boolean nonObfuscated;
+        boolean mapped;
+        String inheritedName;
+        boolean[] fieldsNonObfuscated;
+        EntryTriple[] fieldEntries;
+        MethodPlan[] methods;
+    }
+
+    private static final class MethodPlan {
+        final boolean obfuscated;
+        final boolean source;
+        // candidate names found through the mappings; null unless obfuscated and mappings are loaded
+        final Map<String, Set<String>> names;
+        final Set<JarMethodEntry> allEntries;
+
+        MethodPlan(boolean obfuscated, boolean source, Map<String, Set<String>> names, Set<JarMethodEntry> allEntries) {
+            this.obfuscated = obfuscated;
+            this.source = source;
+            this.names = names;
+            this.allEntries = allEntries;
+        }
+    }
+
+    /**
+     * Phase one of generation: plans every class of the jar, on a fork-join pool when more than one thread is set.
+     * Phase two, {@link #addClass}, then walks the classes in order, hands out counters and writes the lines, so the
+     * output is the same as naming everything serially.
+     */
+    private Map<JarClassEntry, ClassPlan> planClasses(ClassStorage storageOld, ClassStorage storage) throws IOException {
+        List<JarClassEntry> classes = new ArrayList<>();
+        collectClasses(((JarRootEntry) storage).getClasses(), classes);
+
+        List<ClassPlan> planList;
+        if (threads > 1) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                planList = pool.submit(() -> classes.parallelStream()
+                        .map((c) -> planClass(storageOld, storage, c))
+                        .collect(Collectors.toList())).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        } else {
+            planList = new ArrayList<>(classes.size());
+            for (JarClassEntry c : classes) {
+                planList.add(planClass(storageOld, storage, c));
+            }
+        }
+
+        Map<JarClassEntry, ClassPlan> plans = new IdentityHashMap<>();
+        for (int i = 0; i < classes.size(); i++) {
+            plans.put(classes.get(i), planList.get(i));
+        }
+        return plans;
+    }
+
+    private static void collectClasses(Collection<JarClassEntry> classes, List<JarClassEntry> out) {
+        for (JarClassEntry c : classes) {
+            out.add(c);
+            collectClasses(c.getInnerClasses(), out);
+        }
+    }
+
+    private ClassPlan planClass(ClassStorage storageOld, ClassStorage storage, JarClassEntry c) {
+        ClassPlan plan = new ClassPlan();
+        plan.nonObfuscated = nonObfuscatedPatterns.matches(c.getFullyQualifiedName());
+        plan.mapped = isMappedClass(storage, c);
+        if (!plan.nonObfuscated && plan.mapped) {
+            plan.inheritedName = findClassName(c);
+        }
+
+        Collection<JarFieldEntry> fields = c.getFields();
+        plan.fieldsNonObfuscated = new boolean[fields.size()];
+        plan.fieldEntries = new EntryTriple[fields.size()];
+        int i = 0;
+        for (JarFieldEntry f : fields) {
+            plan.fieldsNonObfuscated[i] = nonObfuscatedMemberPatterns.matchesMember(c.getFullyQualifiedName(), f.getKey());
+            if (!plan.fieldsNonObfuscated[i]) {
+                plan.fieldEntries[i] = findFieldEntry(c, f);
+            }
+            i++;
+        }
+
+        Collection<JarMethodEntry> methods = c.getMethods();
+        plan.methods = new MethodPlan[methods.size()];
+        i = 0;
+        for (JarMethodEntry m : methods) {
+            boolean obfuscated = isObfuscatedMethod(storage, c, m);
+            Map<String, Set<String>> names = null;
+            Set<JarMethodEntry> allEntries = null;
+            if (obfuscated && (newToOld != null || newToIntermediary != null)) {
+                names = new HashMap<>();
+                allEntries = findNames(storageOld, storage, c, m, names);
+            }
+            plan.methods[i++] = new MethodPlan(obfuscated, isSource(storage, c, m), names, allEntries);
+        }
+
+        return plan;
+    }
+
+    @Nullable
+    private String findClassName(JarClassEntry c) {
+        if (newToIntermediary != null) {
+            String findName = newToIntermediary.getClass(c.getFullyQualifiedName());
+            if (findName != null) {
+                return findName;
+            }
+        }
+
+        if (newToOld != null) {
+            String findName = newToOld.getClass(c.getFullyQualifiedName());
+            if (findName != null) {
+                return oldToIntermediary.getClass(findName);
+            }
+        }
+
+        return null;
+    }
+
+    private void addClass(BufferedWriter writer, JarClassEntry c, Map<JarClassEntry, ClassPlan> plans, String translatedPrefix) throws IOException {
+        ClassPlan plan = plans.get(c);
         String className = c.getName();
         String cname = "";
         String prefixSaved = translatedPrefix;
 
-        if(this.nonObfuscatedPatterns.stream().anyMatch(p -> p.matcher(c.getFullyQualifiedName()).matches())) {
+        if (plan.nonObfuscated) {
             translatedPrefix = c.getFullyQualifiedName();
         } else {
-            if (!isMappedClass(storage, c)) {
+            if (!plan.mapped) {
                 cname = c.getName();
             } else {
                 cname = null;
 
-                if (newToIntermediary != null) {
-                    String findName = newToIntermediary.getClass(c.getFullyQualifiedName());
-                    if (findName != null) {
-                        String[] r = findName.split("\\$");
-                        cname = r[r.length - 1];
-                        if (r.length == 1) {
-                            translatedPrefix = "";
-                        }
-                    }
-                }
-
-                if (cname == null && newToOld != null) {
-                    String findName = newToOld.getClass(c.getFullyQualifiedName());
-                    if (findName != null) {
-                        findName = oldToIntermediary.getClass(findName);
-                        if (findName != null) {
-                            String[] r = findName.split("\\$");
-                            cname = r[r.length - 1];
-                            if (r.length == 1) {
-                                translatedPrefix = "";
-                            }
-
-                        }
+                if (plan.inheritedName != null) {
+                    String[] r = plan.inheritedName.split("\\$");
+                    cname = r[r.length - 1];
+                    if (r.length == 1) {
+                        translatedPrefix = "";
                     }
                 }
 
@@ -488,8 +799,10 @@ class GenState {
             writer.write("CLASS\t" + c.getFullyQualifiedName() + "\t" + newClassName + "\n");
         }
 
+        int i = 0;
         for (JarFieldEntry f : c.getFields()) {
-            String fName = getFieldName(storage, c, f);
+            String fName = getFieldName(c, f, plan.fieldsNonObfuscated[i], plan.fieldEntries[i]);
+            i++;
             if (fName == null) {
                 fName = f.getName();
             }
@@ -502,10 +815,12 @@ class GenState {
             }
         }
 
+        i = 0;
         for (JarMethodEntry m : c.getMethods()) {
-            String mName = getMethodName(storageOld, storage, c, m);
+            MethodPlan methodPlan = plan.methods[i++];
+            String mName = getMethodName(c, m, methodPlan);
             if (mName == null) {
-                if (!m.getName().startsWith("<") && m.isSource(storage, c)) {
+                if (!m.getName().startsWith("<") && methodPlan.source) {
                    mName = m.getName();
                 }
             }
@@ -519,41 +834,19 @@ class GenState {
         }
 
         for (JarClassEntry cc : c.getInnerClasses()) {
-            addClass(writer, cc, storageOld, storage, translatedPrefix + cname + "$");
+            addClass(writer, cc, plans, translatedPrefix + cname + "$");
         }
     }
 
     public void prepareRewrite(File oldMappings) throws IOException {
-        oldToIntermediary = new GenMap();
+        oldToIntermediary = loadOldMappings(oldMappings);
         newToOld = new GenMap.Dummy();
-
-        // TODO: only read once
-        readCounters(oldMappings);
-
-        try (FileInputStream inputStream = new FileInputStream(oldMappings)) {
-            oldToIntermediary.load(
-                    MappingsProvider.readTinyMappings(inputStream),
-                    "official",
-                    "intermediary"
-            );
-        }
     }
 
     public void prepareUpdate(File oldMappings, File matches) throws IOException {
-        oldToIntermediary = new GenMap();
+        oldToIntermediary = loadOldMappings(oldMappings);
         newToOld = new GenMap();
 
-        // TODO: only read once
-        readCounters(oldMappings);
-
-        try (FileInputStream inputStream = new FileInputStream(oldMappings)) {
-            oldToIntermediary.load(
-                    MappingsProvider.readTinyMappings(inputStream),
-                    "official",
-                    "intermediary"
-            );
-        }
-
         try (FileReader fileReader = new FileReader(matches)) {
             try (BufferedReader reader = new BufferedReader(fileReader)) {
                 MatcherUtil.read(reader, true, newToOld::addClass, newToOld::addField, newToOld::addMethod);
@@ -561,13 +854,60 @@ class GenState {
         }
     }
 
-    private void readCounters(File counterFile) throws IOException {
+    /**
+     * Reads the old mappings and their counters in one pass. The counters come from the external counter file instead
+     * when one is configured and exists.
+     */
+    private GenMap loadOldMappings(File oldMappings) throws IOException {
         Path counterPath = getExternalCounterFile();
 
         if (counterPath != null && Files.exists(counterPath)) {
-            counterFile = counterPath.toFile();
+            readCounters(counterPath.toFile());
+            return loadMappings(oldMappings, null);
+        }
+
+        return loadMappings(oldMappings, counters::put);
+    }
+
+    /**
+     * Loads an official to intermediary tiny file. The last file read is kept, so loading it again as the target of
+     * {@link #generate} does not parse it a second time as long as it has not changed in between.
+     */
+    private GenMap loadMappings(File file, @Nullable BiConsumer<String, Integer> counterConsumer) throws IOException {
+        if (counterConsumer == null && loadedMappings != null && loadedMappings.matches(file)) {
+            return loadedMappings.map;
+        }
+
+        GenMap map = new GenMap();
+        try (FileReader fileReader = new FileReader(file)) {
+            try (BufferedReader reader = new BufferedReader(fileReader)) {
+                map.loadTiny(reader, "official", "intermediary", counterConsumer);
+            }
         }
 
+        loadedMappings = new LoadedMappings(file, map);
+        return map;
+    }
+
+    private static final class LoadedMappings {
+        final File file;
+        final long lastModified;
+        final long length;
+        final GenMap map;
+
+        LoadedMappings(File file, GenMap map) {
+            this.file = file.getAbsoluteFile();
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            this.map = map;
+        }
+
+        boolean matches(File other) {
+            return file.equals(other.getAbsoluteFile()) && lastModified == other.lastModified() && length == other.length();
+        }
+    }
+
+    private void readCounters(File counterFile) throws IOException {
         try (FileReader fileReader = new FileReader(counterFile)) {
             try (BufferedReader reader = new BufferedReader(fileReader)) {
                 String line;
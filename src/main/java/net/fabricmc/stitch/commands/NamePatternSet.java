@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.commands;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Name patterns that must match a whole name. A pattern made only of literal alternatives, each optionally ending in
+ * {@code .*}, like {@code ^(a/B|a/C/.*)$}, is answered from a hash set and a prefix trie instead of the regex; any other
+ * pattern is kept as a regex. Member names ({@code owner/key}) are looked up with the owner's part decided once per
+ * owner.
+ */
+final class NamePatternSet {
+    private final Set<String> literals = new HashSet<>();
+    private final Node prefixes = new Node();
+    private final List<Pattern> regexes = new ArrayList<>();
+    private final Map<String, Owner> owners = new ConcurrentHashMap<>();
+
+    private static final class Node {
+        final Map<Character, Node> children = new HashMap<>();
+        boolean terminal;
+    }
+
+    /**
+     * What the owner part of a member name decides: the literal keys listed for it, whether a prefix already matched
+     * within it, and where the trie walk stands after it.
+     */
+    private static final class Owner {
+        final Set<String> literalKeys;
+        final boolean prefixMatched;
+        final Node node;
+
+        Owner(Set<String> literalKeys, boolean prefixMatched, Node node) {
+            this.literalKeys = literalKeys;
+            this.prefixMatched = prefixMatched;
+            this.node = node;
+        }
+    }
+
+    void add(Pattern pattern) {
+        List<String> alternatives = pattern.flags() == 0 ? splitLiteralAlternatives(pattern.pattern()) : null;
+        if (alternatives == null) {
+            regexes.add(pattern);
+        } else {
+            for (String alternative : alternatives) {
+                if (alternative.endsWith("\0*")) {
+                    addPrefix(alternative.substring(0, alternative.length() - 2));
+                } else {
+                    literals.add(alternative);
+                }
+            }
+        }
+
+        owners.clear();
+    }
+
+    void clear() {
+        literals.clear();
+        prefixes.children.clear();
+        prefixes.terminal = false;
+        regexes.clear();
+        owners.clear();
+    }
+
+    boolean matches(String name) {
+        return literals.contains(name) || matchesPrefix(prefixes, name, 0) || matchesRegex(name);
+    }
+
+    /**
+     * Same as {@code matches(owner + "/" + key)}.
+     */
+    boolean matchesMember(String owner, String key) {
+        Owner verdict = owners.computeIfAbsent(owner, this::decideOwner);
+
+        return verdict.literalKeys.contains(key)
+                || (verdict.prefixMatched && !hasLineTerminator(key, 0))
+                || (verdict.node != null && matchesPrefix(verdict.node, key, 0))
+                || (!regexes.isEmpty() && matchesRegex(owner + "/" + key));
+    }
+
+    private Owner decideOwner(String owner) {
+        String start = owner + "/";
+
+        Set<String> literalKeys = Collections.emptySet();
+        for (String literal : literals) {
+            if (literal.startsWith(start)) {
+                if (literalKeys.isEmpty()) {
+                    literalKeys = new HashSet<>();
+                }
+                literalKeys.add(literal.substring(start.length()));
+            }
+        }
+
+        boolean prefixMatched = false;
+        Node node = prefixes;
+        for (int i = 0; i < start.length() && node != null; i++) {
+            prefixMatched |= node.terminal && !hasLineTerminator(start, i);
+            node = node.children.get(start.charAt(i));
+        }
+
+        return new Owner(literalKeys, prefixMatched, node);
+    }
+
+    private void addPrefix(String prefix) {
+        Node node = prefixes;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.children.computeIfAbsent(prefix.charAt(i), (c) -> new Node());
+        }
+        node.terminal = true;
+    }
+
+    // a prefix matches if the rest of the name is something '.*' matches, i.e. has no line terminators
+    private static boolean matchesPrefix(Node node, String name, int start) {
+        for (int i = start; node != null; i++) {
+            if (node.terminal && !hasLineTerminator(name, i)) {
+                return true;
+            }
+            if (i == name.length()) {
+                break;
+            }
+            node = node.children.get(name.charAt(i));
+        }
+
+        return false;
+    }
+
+    private boolean matchesRegex(String name) {
+        for (Pattern pattern : regexes) {
+            if (pattern.matcher(name).matches()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean hasLineTerminator(String s, int start) {
+        for (int i = start; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Splits {@code ^(a|b|...)$} (anchors and group optional) into its unescaped alternatives, with a trailing
+     * {@code .*} turned into "\0*". Returns null if any alternative is more than a literal.
+     */
+    static List<String> splitLiteralAlternatives(String regex) {
+        int start = 0;
+        int end = regex.length();
+
+        if (start < end && regex.charAt(start) == '^') {
+            start++;
+        }
+        if (end > start && regex.charAt(end - 1) == '$' && !isEscaped(regex, end - 1)) {
+            end--;
+        }
+
+        if (end - start >= 2 && regex.charAt(start) == '(' && regex.charAt(end - 1) == ')' && !isEscaped(regex, end - 1)
+                && closingParen(regex, start) == end - 1) {
+            start += regex.startsWith("(?:", start) ? 3 : 1;
+            end--;
+        }
+
+        List<String> alternatives = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+
+        for (int i = start; i <= end; i++) {
+            if (i == end || regex.charAt(i) == '|') {
+                alternatives.add(literal.toString());
+                literal.setLength(0);
+                continue;
+            }
+
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= end) {
+                    return null;
+                }
+                char escaped = regex.charAt(++i);
+                // \d, \Q, \1 and friends are not literals
+                if (escaped == '\0' || escaped < 128 && Character.isLetterOrDigit(escaped)) {
+                    return null;
+                }
+                literal.append(escaped);
+            } else if (c == '.' && i + 2 <= end && regex.charAt(i + 1) == '*' && (i + 2 == end || regex.charAt(i + 2) == '|')) {
+                if (literal.indexOf("\0") >= 0) {
+                    return null;
+                }
+                literal.append("\0*");
+                i++;
+            } else if (c == '\0' || ".*+?^$[](){}".indexOf(c) >= 0) {
+                return null;
+            } else {
+                literal.append(c);
+            }
+        }
+
+        return alternatives;
+    }
+
+    private static boolean isEscaped(String regex, int index) {
+        int backslashes = 0;
+        for (int i = index - 1; i >= 0 && regex.charAt(i) == '\\'; i--) {
+            backslashes++;
+        }
+        return (backslashes & 1) != 0;
+    }
+
+    // index of the parenthesis closing the one at start, ignoring escapes; character classes make it give up
+    private static int closingParen(String regex, int start) {
+        int depth = 0;
+        for (int i = start; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                return -1;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.commands.tinyv1;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams a tiny v1 file to a {@link Visitor} line by line. Columns are located by scanning for tabs and only the
+ * namespaces the visitor selects are cut out of the line, so nothing is kept beyond what the visitor stores itself.
+ */
+public final class TinyV1Reader {
+	private TinyV1Reader() {
+	}
+
+	public interface Visitor {
+		/**
+		 * Receives the namespaces from the header and returns the indices of the ones to pass on, in the order the
+		 * name arrays should have them. Returning null passes on all of them.
+		 */
+		default int[] start(List<String> namespaces) throws IOException {
+			return null;
+		}
+
+		default void visitClass(String[] names) {
+		}
+
+		/**
+		 * Owner and descriptor are in the first namespace of the file.
+		 */
+		default void visitField(String owner, String desc, String[] names) {
+		}
+
+		default void visitMethod(String owner, String desc, String[] names) {
+		}
+
+		/**
+		 * Receives every line starting with '#', such as the INTERMEDIARY-COUNTER lines, unchanged.
+		 */
+		default void visitComment(String line) {
+		}
+	}
+
+	public static void read(BufferedReader reader, Visitor visitor) throws IOException {
+		String header = reader.readLine();
+		if (header == null || !header.startsWith("v1\t")) {
+			throw new IOException("Not a tiny v1 file, header: " + header);
+		}
+
+		List<String> namespaces = new ArrayList<>();
+		int[] tabs = new int[8];
+		int columns = findTabs(header, tabs);
+		tabs = ensureCapacity(tabs, columns, header);
+		for (int i = 1; i < columns; i++) {
+			namespaces.add(column(header, tabs, i));
+		}
+
+		int[] selected = visitor.start(Collections.unmodifiableList(namespaces));
+		if (selected == null) {
+			selected = new int[namespaces.size()];
+			for (int i = 0; i < selected.length; i++) {
+				selected[i] = i;
+			}
+		}
+
+		String line;
+		int lineNumber = 1;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			if (line.isEmpty()) {
+				continue;
+			}
+
+			if (line.charAt(0) == '#') {
+				visitor.visitComment(line);
+				continue;
+			}
+
+			int nameStart;
+			if (line.startsWith("CLASS\t")) {
+				nameStart = 1;
+			} else if (line.startsWith("FIELD\t") || line.startsWith("METHOD\t")) {
+				nameStart = 3;
+			} else {
+				continue; // other entry kinds carry nothing callers use
+			}
+
+			columns = findTabs(line, tabs);
+			tabs = ensureCapacity(tabs, columns, line);
+
+			String[] names = new String[selected.length];
+			for (int i = 0; i < selected.length; i++) {
+				int column = nameStart + selected[i];
+				if (column >= columns) {
+					throw new IOException("Line " + lineNumber + " has no name for namespace " + namespaces.get(selected[i]));
+				}
+				names[i] = column(line, tabs, column);
+			}
+
+			if (nameStart == 1) {
+				visitor.visitClass(names);
+			} else if (line.charAt(0) == 'F') {
+				visitor.visitField(column(line, tabs, 1), column(line, tabs, 2), names);
+			} else {
+				visitor.visitMethod(column(line, tabs, 1), column(line, tabs, 2), names);
+			}
+		}
+	}
+
+	/**
+	 * Records where each column ends into tabs, as far as it fits, and returns the number of columns.
+	 */
+	private static int findTabs(String line, int[] tabs) {
+		int columns = 0;
+		int pos = -1;
+		do {
+			pos = line.indexOf('\t', pos + 1);
+			if (columns < tabs.length) {
+				tabs[columns] = pos < 0 ? line.length() : pos;
+			}
+			columns++;
+		} while (pos >= 0);
+		return columns;
+	}
+
+	private static int[] ensureCapacity(int[] tabs, int columns, String line) {
+		if (columns <= tabs.length) {
+			return tabs;
+		}
+
+		tabs = new int[columns];
+		findTabs(line, tabs);
+		return tabs;
+	}
+
+	private static String column(String line, int[] tabs, int column) {
+		return line.substring(column == 0 ? 0 : tabs[column - 1] + 1, tabs[column]);
+	}
+
+	/**
+	 * Rewrites the class names in a descriptor through the given map, keeping names it does not contain.
+	 */
+	public static String remapDescriptor(String desc, Map<String, String> classes) {
+		int start = desc.indexOf('L');
+		if (start < 0) {
+			return desc;
+		}
+
+		StringBuilder builder = new StringBuilder(desc.length());
+		int i = 0;
+		do {
+			int end = desc.indexOf(';', start);
+			String name = desc.substring(start + 1, end);
+			builder.append(desc, i, start + 1).append(classes.getOrDefault(name, name)).append(';');
+			i = end + 1;
+		} while ((start = desc.indexOf('L', i)) >= 0);
+
+		return builder.append(desc, i, desc.length()).toString();
+	}
+}
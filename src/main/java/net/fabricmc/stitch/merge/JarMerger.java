@@ -16,6 +16,7 @@
 
 package net.fabricmc.stitch.merge;
 
+import net.fabricmc.stitch.util.ClassSource;
 import net.fabricmc.stitch.util.SnowmanClassVisitor;
 import net.fabricmc.stitch.util.StitchUtil;
 import net.fabricmc.stitch.util.SyntheticParameterClassVisitor;
@@ -27,7 +28,6 @@ import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributeView;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -36,20 +36,18 @@ import java.util.stream.Collectors;
 
 public class JarMerger implements AutoCloseable {
     public class Entry {
-        public final Path path;
-        public final BasicFileAttributes metadata;
+        public final ClassSource.Entry source;
         public final byte[] data;
 
-        public Entry(Path path, BasicFileAttributes metadata, byte[] data) {
-            this.path = path;
-            this.metadata = metadata;
+        public Entry(ClassSource.Entry source, byte[] data) {
+            this.source = source;
             this.data = data;
         }
     }
 
     private static final ClassMerger CLASS_MERGER = new ClassMerger();
-    private final StitchUtil.FileSystemDelegate inputClientFs, inputServerFs, outputFs;
-    private final Path inputClient, inputServer;
+    private final StitchUtil.FileSystemDelegate outputFs;
+    private final ClassSource inputClient, inputServer;
     private final Map<String, Entry> entriesClient, entriesServer;
     private final Set<String> entriesAll;
     private boolean removeSnowmen = false;
@@ -62,8 +60,8 @@ public class JarMerger implements AutoCloseable {
             }
         }
 
-        this.inputClient = (inputClientFs = StitchUtil.getJarFileSystem(inputClient, false)).get().getPath("/");
-        this.inputServer = (inputServerFs = StitchUtil.getJarFileSystem(inputServer, false)).get().getPath("/");
+        this.inputClient = ClassSource.open(inputClient);
+        this.inputServer = ClassSource.open(inputServer);
         this.outputFs = StitchUtil.getJarFileSystem(output, true);
 
         this.entriesClient = new HashMap<>();
@@ -81,64 +79,53 @@ public class JarMerger implements AutoCloseable {
 
     @Override
     public void close() throws IOException {
-        inputClientFs.close();
-        inputServerFs.close();
+        inputClient.close();
+        inputServer.close();
         outputFs.close();
     }
 
-    private void readToMap(Map<String, Entry> map, Path input, boolean isServer) {
+    private void readToMap(Map<String, Entry> map, ClassSource input, boolean isServer) {
         try {
-            Files.walkFileTree(input, new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult visitFile(Path path, BasicFileAttributes attr) throws IOException {
-                    if (attr.isDirectory()) {
-                        return FileVisitResult.CONTINUE;
-                    }
+            for (ClassSource.Entry entry : input.getEntries()) {
+                String name = entry.getName();
 
-                    if (!path.getFileName().toString().endsWith(".class")) {
-                        if (path.toString().equals("/META-INF/MANIFEST.MF")) {
-                            map.put("META-INF/MANIFEST.MF", new Entry(path, attr,
-                                    "Manifest-Version: 1.0\nMain-Class: net.minecraft.client.Main\n".getBytes(Charset.forName("UTF-8"))));
-                        } else {
-                            if (path.toString().startsWith("/META-INF/")) {
-                                if (path.toString().endsWith(".SF") || path.toString().endsWith(".RSA")) {
-                                    return FileVisitResult.CONTINUE;
-                                }
+                if (!entry.isClass()) {
+                    if (name.equals("META-INF/MANIFEST.MF")) {
+                        map.put("META-INF/MANIFEST.MF", new Entry(entry,
+                                "Manifest-Version: 1.0\nMain-Class: net.minecraft.client.Main\n".getBytes(Charset.forName("UTF-8"))));
+                    } else {
+                        if (name.startsWith("META-INF/")) {
+                            if (name.endsWith(".SF") || name.endsWith(".RSA")) {
+                                continue;
                             }
-
-                            map.put(path.toString().substring(1), new Entry(path, attr, null));
                         }
-                        
-                        return FileVisitResult.CONTINUE;
+
+                        map.put(name, new Entry(entry, null));
                     }
 
-                    byte[] output = Files.readAllBytes(path);
-                    map.put(path.toString().substring(1), new Entry(path, attr, output));
-                    return FileVisitResult.CONTINUE;
+                    continue;
                 }
-            });
+
+                map.put(name, new Entry(entry, entry.read()));
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     private void add(Entry entry) throws IOException {
-        Path outPath = outputFs.get().getPath(entry.path.toString());
+        Path outPath = outputFs.get().getPath("/" + entry.source.getName());
         if (outPath.getParent() != null) {
             Files.createDirectories(outPath.getParent());
         }
 
-        if (entry.data != null) {
-            Files.write(outPath, entry.data, StandardOpenOption.CREATE_NEW);
-        } else {
-            Files.copy(entry.path, outPath);
-        }
+        Files.write(outPath, entry.data != null ? entry.data : entry.source.read(), StandardOpenOption.CREATE_NEW);
 
         Files.getFileAttributeView(outPath, BasicFileAttributeView.class)
                 .setTimes(
-                        entry.metadata.creationTime(),
-                        entry.metadata.lastAccessTime(),
-                        entry.metadata.lastModifiedTime()
+                        entry.source.getLastModifiedTime(),
+                        entry.source.getLastAccessTime(),
+                        entry.source.getCreationTime()
                 );
     }
 
@@ -170,7 +157,7 @@ public class JarMerger implements AutoCloseable {
                     result = entry1;
                 } else {
                     if (isClass) {
-                        result = new Entry(entry1.path, entry1.metadata, CLASS_MERGER.merge(entry1.data, entry2.data));
+                        result = new Entry(entry1.source, CLASS_MERGER.merge(entry1.data, entry2.data));
                     } else {
                         // FIXME: More heuristics?
                         result = entry1;
@@ -209,7 +196,7 @@ public class JarMerger implements AutoCloseable {
                     if (visitor != writer) {
                         reader.accept(visitor, 0);
                         data = writer.toByteArray();
-                        result = new Entry(result.path, result.metadata, data);
+                        result = new Entry(result.source, data);
                     }
                 }
 
@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.representation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dense ids and memoized ancestor/descendant closures over the classes reachable through one {@link ClassStorage}.
+ * Closures keep the order of a depth-first walk (superclass before interfaces, subclasses before implementers), so
+ * queries answer exactly like the recursive walks in {@link JarMethodEntry} without going through name lookups.
+ * Build it once the hierarchy is complete; it does not notice classes added afterwards.
+ */
+public class ClassHierarchy {
+    private static final Node[] EMPTY = new Node[0];
+
+    private final ClassStorage storage;
+    private final Map<JarClassEntry, Node> nodes = new IdentityHashMap<>();
+
+    public ClassHierarchy(ClassStorage storage) {
+        this.storage = storage;
+    }
+
+    private static final class Node {
+        final JarClassEntry entry;
+        final int id;
+        Node[] parents;
+        Node[] children;
+        Node[] ancestors;
+        Node[] descendants;
+
+        Node(JarClassEntry entry, int id) {
+            this.entry = entry;
+            this.id = id;
+        }
+    }
+
+    private synchronized Node getNode(JarClassEntry entry) {
+        Node node = nodes.get(entry);
+        if (node == null) {
+            node = new Node(entry, nodes.size());
+            nodes.put(entry, node);
+        }
+        return node;
+    }
+
+    private synchronized Node[] getParents(Node node) {
+        if (node.parents == null) {
+            List<Node> parents = new ArrayList<>();
+            JarClassEntry superClass = node.entry.getSuperClass(storage);
+            if (superClass != null) {
+                parents.add(getNode(superClass));
+            }
+            for (JarClassEntry itf : node.entry.getInterfaces(storage)) {
+                parents.add(getNode(itf));
+            }
+            node.parents = parents.toArray(new Node[0]);
+        }
+        return node.parents;
+    }
+
+    private synchronized Node[] getChildren(Node node) {
+        if (node.children == null) {
+            List<Node> children = new ArrayList<>();
+            for (JarClassEntry cc : node.entry.getSubclasses(storage)) {
+                children.add(getNode(cc));
+            }
+            for (JarClassEntry cc : node.entry.getImplementers(storage)) {
+                children.add(getNode(cc));
+            }
+            node.children = children.toArray(new Node[0]);
+        }
+        return node.children;
+    }
+
+    /**
+     * The node itself followed by all supertypes, in the order a depth-first walk first reaches them.
+     */
+    private synchronized Node[] getAncestors(Node node) {
+        if (node.ancestors == null) {
+            node.ancestors = EMPTY; // guards against cyclic hierarchies
+            List<Node> closure = new ArrayList<>();
+            BitSet seen = new BitSet();
+            closure.add(node);
+            seen.set(node.id);
+            for (Node parent : getParents(node)) {
+                append(closure, seen, getAncestors(parent));
+            }
+            node.ancestors = closure.toArray(new Node[0]);
+        }
+        return node.ancestors;
+    }
+
+    /**
+     * The node itself followed by all subtypes, in the order a depth-first walk first reaches them.
+     */
+    private synchronized Node[] getDescendants(Node node) {
+        if (node.descendants == null) {
+            node.descendants = EMPTY;
+            List<Node> closure = new ArrayList<>();
+            BitSet seen = new BitSet();
+            closure.add(node);
+            seen.set(node.id);
+            for (Node child : getChildren(node)) {
+                append(closure, seen, getDescendants(child));
+            }
+            node.descendants = closure.toArray(new Node[0]);
+        }
+        return node.descendants;
+    }
+
+    // A closure of a later branch only adds what earlier branches did not reach; whatever they reached, they reached
+    // together with its whole closure, so filtering keeps depth-first order.
+    private static void append(List<Node> closure, BitSet seen, Node[] nodes) {
+        for (Node node : nodes) {
+            if (!seen.get(node.id)) {
+                seen.set(node.id);
+                closure.add(node);
+            }
+        }
+    }
+
+    /**
+     * Same result, in the same order, as the fixed-point walk in {@link JarMethodEntry#getMatchingEntries}.
+     *
+     * <p>This stays a walk over the memoized closures rather than an intersection of closure bitsets, because callers
+     * depend on the order entries are reached in: joining takes the first record component met, and generation
+     * recurses into related methods and memoizes per family in list order. With returnOnNonObfuscated, the result
+     * also depends on which pass first meets a non-obfuscated method. A bitset would give the members but not their
+     * order, so listing them would still take this walk. As it is, each entry is expanded once per query, with no
+     * name lookups and no per-step set allocations, and stage 3 gets its groups from {@link #getOverrideGroups}.
+     */
+    List<JarClassEntry> getMatchingEntries(JarMethodEntry m, JarClassEntry c, boolean returnOnNonObfuscated) {
+        String key = m.getKey();
+        List<Node> entries = new ArrayList<>();
+        BitSet present = new BitSet();
+
+        Node start = getNode(c);
+        entries.add(start);
+        present.set(start.id);
+        boolean hasNonObfuscated = isNonObfuscated(start, key);
+
+        // Each pass only expands the entries it has not expanded yet; older ones would add nothing new. The original
+        // stops as soon as a pass meets an entry with a non-obfuscated method, which is the same as checking whether
+        // any entry has one when the pass begins.
+        int sourcesDone = 0;
+        int entriesDone = 0;
+        int lastSize = 0;
+
+        while (entries.size() > lastSize) {
+            lastSize = entries.size();
+
+            if (returnOnNonObfuscated && hasNonObfuscated) break;
+            int end = entries.size();
+            for (int i = sourcesDone; i < end; i++) {
+                for (Node ancestor : getAncestors(entries.get(i))) {
+                    if (!present.get(ancestor.id) && isMatchingSource(ancestor, key)) {
+                        present.set(ancestor.id);
+                        entries.add(ancestor);
+                        hasNonObfuscated |= isNonObfuscated(ancestor, key);
+                    }
+                }
+            }
+            sourcesDone = end;
+
+            if (returnOnNonObfuscated && hasNonObfuscated) break;
+            end = entries.size();
+            for (int i = entriesDone; i < end; i++) {
+                for (Node descendant : getDescendants(entries.get(i))) {
+                    if (!present.get(descendant.id)) {
+                        present.set(descendant.id);
+                        entries.add(descendant);
+                        hasNonObfuscated |= isNonObfuscated(descendant, key);
+                    }
+                }
+            }
+            entriesDone = end;
+        }
+
+        List<JarClassEntry> result = new ArrayList<>(entries.size());
+        for (Node node : entries) {
+            if (node.entry.getMethod(key) != null) {
+                result.add(node.entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether no supertype of c declares a non-private, non-static method with m's key.
+     */
+    boolean isSource(JarMethodEntry m, JarClassEntry c) {
+        String key = m.getKey();
+        Node node = getNode(c);
+
+        for (Node ancestor : getAncestors(node)) {
+            if (ancestor != node && isMatchingSource(ancestor, key)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Splits the method declarations of the given classes into override groups per method key. Non-private,
+     * non-static declarations that share a subtype end up together, along with every same-keyed declaration in their
+     * subtypes; that is the set {@link #getMatchingEntries} reaches from any non-private, non-static member, found
+     * with one disjoint-set pass per key instead of one walk per method. Groups list their classes in the given order
+     * and declarations that override nothing are left out.
+     */
+    Map<String, List<List<JarClassEntry>>> getOverrideGroups(List<JarClassEntry> classes) {
+        Map<String, String> keys = new HashMap<>();
+        Map<String, List<Node>> declarations = new LinkedHashMap<>();
+
+        for (JarClassEntry c : classes) {
+            Node node = getNode(c);
+            for (String key : c.methods.keySet()) {
+                declarations.computeIfAbsent(keys.computeIfAbsent(key, k -> k), k -> new ArrayList<>()).add(node);
+            }
+        }
+
+        // children may reach classes outside the list; those only ever connect members through themselves
+        for (JarClassEntry c : classes) {
+            for (Node child : getChildren(getNode(c))) {
+                getChildren(child);
+            }
+        }
+
+        int[] parents = new int[nodes.size()];
+        Arrays.fill(parents, -1);
+        List<Node> touched = new ArrayList<>();
+        Deque<Node> queue = new ArrayDeque<>();
+        Map<String, List<List<JarClassEntry>>> groups = new LinkedHashMap<>();
+
+        for (Map.Entry<String, List<Node>> entry : declarations.entrySet()) {
+            String key = entry.getKey();
+            List<Node> declaring = entry.getValue();
+            if (declaring.size() < 2) {
+                continue;
+            }
+
+            for (Node node : declaring) {
+                if (isMatchingSource(node, key) && parents[node.id] < 0) {
+                    parents[node.id] = node.id;
+                    touched.add(node);
+                    queue.add(node);
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                Node node = queue.poll();
+                for (Node child : getChildren(node)) {
+                    if (child.id >= parents.length) {
+                        parents = grow(parents, nodes.size());
+                    }
+                    if (parents[child.id] < 0) {
+                        parents[child.id] = child.id;
+                        touched.add(child);
+                        queue.add(child);
+                    }
+                    union(parents, node.id, child.id);
+                }
+            }
+
+            Map<Integer, List<JarClassEntry>> byRoot = new LinkedHashMap<>();
+            for (Node node : declaring) {
+                if (parents[node.id] >= 0) {
+                    byRoot.computeIfAbsent(find(parents, node.id), k -> new ArrayList<>()).add(node.entry);
+                }
+            }
+            for (List<JarClassEntry> group : byRoot.values()) {
+                if (group.size() > 1) {
+                    groups.computeIfAbsent(key, k -> new ArrayList<>()).add(group);
+                }
+            }
+
+            for (Node node : touched) {
+                parents[node.id] = -1;
+            }
+            touched.clear();
+        }
+
+        return groups;
+    }
+
+    private static int[] grow(int[] parents, int size) {
+        int length = parents.length;
+        parents = Arrays.copyOf(parents, Math.max(size, length * 2));
+        Arrays.fill(parents, length, parents.length, -1);
+        return parents;
+    }
+
+    private static int find(int[] parents, int id) {
+        while (parents[id] != id) {
+            parents[id] = parents[parents[id]];
+            id = parents[id];
+        }
+        return id;
+    }
+
+    private static void union(int[] parents, int a, int b) {
+        a = find(parents, a);
+        b = find(parents, b);
+        if (a != b) {
+            parents[Math.max(a, b)] = Math.min(a, b);
+        }
+    }
+
+    private static boolean isMatchingSource(Node node, String key) {
+        JarMethodEntry method = node.entry.getMethod(key);
+        return method != null && !Access.isPrivateOrStatic(method.getAccess());
+    }
+
+    private static boolean isNonObfuscated(Node node, String key) {
+        JarMethodEntry method = node.entry.getMethod(key);
+        return method != null && method.isNonObfuscated;
+    }
+
+    public List<JarClassEntry> getAncestors(JarClassEntry c) {
+        return toEntries(getAncestors(getNode(c)));
+    }
+
+    public List<JarClassEntry> getDescendants(JarClassEntry c) {
+        return toEntries(getDescendants(getNode(c)));
+    }
+
+    private static List<JarClassEntry> toEntries(Node[] nodes) {
+        List<JarClassEntry> entries = new ArrayList<>(nodes.length);
+        for (Node node : nodes) {
+            entries.add(node.entry);
+        }
+        return Collections.unmodifiableList(entries);
+    }
+}
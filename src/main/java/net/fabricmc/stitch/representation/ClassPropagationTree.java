@@ -16,8 +16,6 @@
 
 package net.fabricmc.stitch.representation;
 
-import net.fabricmc.stitch.util.StitchUtil;
-
 import java.util.*;
 
 /**
@@ -32,8 +30,9 @@ public class ClassPropagationTree {
 
     public ClassPropagationTree(ClassStorage jar, JarClassEntry baseClass) {
         this.jar = jar;
-        relevantClasses = StitchUtil.newIdentityHashSet();
-        topmostClasses = StitchUtil.newIdentityHashSet();
+        // insertion ordered, so that joining visits classes in the same order on every run
+        relevantClasses = new LinkedHashSet<>();
+        topmostClasses = new LinkedHashSet<>();
 
         LinkedList<JarClassEntry> queue = new LinkedList<>();
         queue.add(baseClass);
@@ -18,4 +18,11 @@ package net.fabricmc.stitch.representation;
 
 public interface ClassStorage {
     JarClassEntry getClass(String name, boolean create);
+
+    /**
+     * Returns the hierarchy index over this storage, or null if none has been built.
+     */
+    default ClassHierarchy getHierarchy() {
+        return null;
+    }
 }
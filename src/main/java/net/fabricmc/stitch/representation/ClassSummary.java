@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.representation;
+
+import net.fabricmc.stitch.util.StitchUtil;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.RecordComponentVisitor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parts of a library class the reader needs to place it in the hierarchy: access, supertypes and member keys.
+ * Code is dropped, and signatures too unless requested. Private members are kept, since joining looks up methods by
+ * key regardless of access.
+ */
+public final class ClassSummary {
+    public static final class Member {
+        final int access;
+        final String name;
+        final String desc;
+        final String signature;
+
+        Member(int access, String name, String desc, String signature) {
+            this.access = access;
+            this.name = name;
+            this.desc = desc;
+            this.signature = signature;
+        }
+    }
+
+    final int access;
+    final String name;
+    final String signature;
+    final String superName;
+    final String[] interfaces;
+    final Member[] recordComponents;
+    final Member[] fields;
+    final Member[] methods;
+
+    ClassSummary(int access, String name, String signature, String superName, String[] interfaces, Member[] recordComponents, Member[] fields, Member[] methods) {
+        this.access = access;
+        this.name = name;
+        this.signature = signature;
+        this.superName = superName;
+        this.interfaces = interfaces;
+        this.recordComponents = recordComponents;
+        this.fields = fields;
+        this.methods = methods;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static ClassSummary read(byte[] classFile) {
+        return read(classFile, false);
+    }
+
+    public static ClassSummary read(byte[] classFile, boolean keepSignatures) {
+        Collector collector = new Collector(keepSignatures);
+        new ClassReader(classFile).accept(collector, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return collector.toSummary();
+    }
+
+    /**
+     * Replays the summary in class file order, as a {@link ClassReader} with {@code SKIP_CODE} would.
+     */
+    public void accept(ClassVisitor visitor) {
+        visitor.visit(Opcodes.V1_8, access, name, signature, superName, interfaces);
+
+        for (Member component : recordComponents) {
+            RecordComponentVisitor componentVisitor = visitor.visitRecordComponent(component.name, component.desc, component.signature);
+            if (componentVisitor != null) {
+                componentVisitor.visitEnd();
+            }
+        }
+
+        for (Member field : fields) {
+            FieldVisitor fieldVisitor = visitor.visitField(field.access, field.name, field.desc, field.signature, null);
+            if (fieldVisitor != null) {
+                fieldVisitor.visitEnd();
+            }
+        }
+
+        for (Member method : methods) {
+            MethodVisitor methodVisitor = visitor.visitMethod(method.access, method.name, method.desc, method.signature, null);
+            if (methodVisitor != null) {
+                methodVisitor.visitEnd();
+            }
+        }
+
+        visitor.visitEnd();
+    }
+
+    private static class Collector extends ClassVisitor {
+        private final boolean keepSignatures;
+        private int access;
+        private String name;
+        private String signature;
+        private String superName;
+        private String[] interfaces;
+        private final List<Member> recordComponents = new ArrayList<>();
+        private final List<Member> fields = new ArrayList<>();
+        private final List<Member> methods = new ArrayList<>();
+
+        Collector(boolean keepSignatures) {
+            super(StitchUtil.ASM_VERSION);
+            this.keepSignatures = keepSignatures;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            this.access = access;
+            this.name = name;
+            this.signature = keepSignatures ? signature : null;
+            this.superName = superName;
+            this.interfaces = interfaces != null ? interfaces : new String[0];
+        }
+
+        @Override
+        public RecordComponentVisitor visitRecordComponent(String name, String descriptor, String signature) {
+            recordComponents.add(new Member(0, name, descriptor, keepSignatures ? signature : null));
+            return null;
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            fields.add(new Member(access, name, descriptor, keepSignatures ? signature : null));
+            return null;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            methods.add(new Member(access, name, descriptor, keepSignatures ? signature : null));
+            return null;
+        }
+
+        ClassSummary toSummary() {
+            return new ClassSummary(access, name, signature, superName, interfaces, recordComponents.toArray(new Member[0]),
+                    fields.toArray(new Member[0]), methods.toArray(new Member[0]));
+        }
+    }
+}
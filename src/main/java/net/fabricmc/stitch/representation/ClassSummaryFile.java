@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.representation;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binary format shared by the classpath cache and the JDK index. A file holds a string table, a directory of class
+ * names and one record per class referring to strings by index; tables are mapped and decoded one class at a time.
+ */
+final class ClassSummaryFile {
+    private static final int MAGIC = 0x53544353; // STCS
+    private static final int VERSION = 2;
+
+    private final ByteBuffer buffer;
+    private final int offsetsStart;
+    private final int stringsStart;
+    private final String[] strings;
+    private final int directoryStart;
+    private final int classCount;
+    private final int recordsStart;
+    private final Map<String, ClassSummary> decoded = new ConcurrentHashMap<>();
+
+    private ClassSummaryFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        int pos = 8;
+        int stringCount = buffer.getInt(pos);
+        pos += 4;
+        offsetsStart = pos;
+        stringsStart = offsetsStart + (stringCount + 1) * 4;
+        strings = new String[stringCount];
+        pos = stringsStart + stringOffset(stringCount);
+
+        classCount = buffer.getInt(pos);
+        directoryStart = pos + 4;
+        recordsStart = directoryStart + classCount * 8;
+    }
+
+    /**
+     * Maps a table written by {@link #write}, or returns null if it was written by another format version.
+     */
+    static ClassSummaryFile open(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.limit() < 8 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            return null;
+        }
+
+        try {
+            return new ClassSummaryFile(buffer);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt summary table " + file, e);
+        }
+    }
+
+    int size() {
+        return classCount;
+    }
+
+    List<String> getClassNames() {
+        List<String> names = new ArrayList<>(classCount);
+        for (int i = 0; i < classCount; i++) {
+            names.add(getString(buffer.getInt(directoryStart + i * 8)));
+        }
+        return names;
+    }
+
+    ClassSummary get(String name) {
+        ClassSummary summary = decoded.get(name);
+        if (summary == null) {
+            int offset = findRecord(name.getBytes(StandardCharsets.UTF_8));
+            if (offset < 0) {
+                return null;
+            }
+
+            summary = decode(name, offset);
+            decoded.put(name, summary);
+        }
+
+        return summary;
+    }
+
+    // binary search over the directory, which is sorted by the names' UTF-8 bytes
+    private int findRecord(byte[] name) {
+        int low = 0;
+        int high = classCount - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = directoryStart + mid * 8;
+            int cmp = compareString(buffer.getInt(entry), name);
+
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return recordsStart + buffer.getInt(entry + 4);
+            }
+        }
+
+        return -1;
+    }
+
+    private int compareString(int id, byte[] other) {
+        int start = stringsStart + stringOffset(id);
+        int length = stringOffset(id + 1) - stringOffset(id);
+        int common = Math.min(length, other.length);
+
+        for (int i = 0; i < common; i++) {
+            int cmp = Byte.compareUnsigned(buffer.get(start + i), other[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+
+        return length - other.length;
+    }
+
+    private int stringOffset(int id) {
+        return buffer.getInt(offsetsStart + id * 4);
+    }
+
+    private String getString(int id) {
+        String s = strings[id];
+        if (s == null) {
+            int start = stringOffset(id);
+            byte[] bytes = new byte[stringOffset(id + 1) - start];
+            buffer.get(stringsStart + start, bytes);
+            strings[id] = s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+
+    private ClassSummary decode(String name, int pos) {
+        int access = buffer.getInt(pos);
+        int superId = buffer.getInt(pos + 4);
+        String[] interfaces = new String[buffer.getInt(pos + 8)];
+        pos += 12;
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = getString(buffer.getInt(pos));
+            pos += 4;
+        }
+
+        ClassSummary.Member[][] members = new ClassSummary.Member[3][];
+        for (int kind = 0; kind < 3; kind++) {
+            members[kind] = new ClassSummary.Member[buffer.getInt(pos)];
+            pos += 4;
+            for (int i = 0; i < members[kind].length; i++) {
+                members[kind][i] = new ClassSummary.Member(buffer.getInt(pos), getString(buffer.getInt(pos + 4)), getString(buffer.getInt(pos + 8)), null);
+                pos += 12;
+            }
+        }
+
+        return new ClassSummary(access, name, null, superId >= 0 ? getString(superId) : null, interfaces, members[0], members[1], members[2]);
+    }
+
+    /**
+     * Writes the table next to its destination and moves it into place, so concurrent readers never see a partial file.
+     */
+    static void write(Path file, Collection<ClassSummary> summaries) throws IOException {
+        Map<String, Integer> stringIds = new LinkedHashMap<>();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream recordsOut = new DataOutputStream(records);
+        List<int[]> directory = new ArrayList<>();
+
+        for (ClassSummary summary : summaries) {
+            directory.add(new int[] { intern(stringIds, summary.name), recordsOut.size() });
+            recordsOut.writeInt(summary.access);
+            recordsOut.writeInt(summary.superName != null ? intern(stringIds, summary.superName) : -1);
+            recordsOut.writeInt(summary.interfaces.length);
+            for (String itf : summary.interfaces) {
+                recordsOut.writeInt(intern(stringIds, itf));
+            }
+
+            for (ClassSummary.Member[] members : new ClassSummary.Member[][] { summary.recordComponents, summary.fields, summary.methods }) {
+                recordsOut.writeInt(members.length);
+                for (ClassSummary.Member member : members) {
+                    recordsOut.writeInt(member.access);
+                    recordsOut.writeInt(intern(stringIds, member.name));
+                    recordsOut.writeInt(intern(stringIds, member.desc));
+                }
+            }
+        }
+
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+
+                List<byte[]> encoded = new ArrayList<>(stringIds.size());
+                out.writeInt(stringIds.size());
+                int offset = 0;
+                for (String s : stringIds.keySet()) {
+                    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                    encoded.add(bytes);
+                    out.writeInt(offset);
+                    offset += bytes.length;
+                }
+                out.writeInt(offset);
+                for (byte[] bytes : encoded) {
+                    out.write(bytes);
+                }
+
+                directory.sort((a, b) -> Arrays.compareUnsigned(encoded.get(a[0]), encoded.get(b[0])));
+                out.writeInt(directory.size());
+                for (int[] entry : directory) {
+                    out.writeInt(entry[0]);
+                    out.writeInt(entry[1]);
+                }
+                records.writeTo(out);
+            }
+
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static int intern(Map<String, Integer> stringIds, String s) {
+        Integer id = stringIds.get(s);
+        if (id == null) {
+            id = stringIds.size();
+            stringIds.put(s, id);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.representation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Library classes shared by several {@link JarReader}s, so that classpaths they have in common are parsed once. Jars
+ * are keyed by the SHA-256 of their contents and JDK classes by the running JDK; summaries keep signatures, so a reader
+ * using the store ends up with the same model as one without it. Safe for concurrent use.
+ */
+public final class ClassSummaryStore {
+    private final Map<String, String> jarKeys = new ConcurrentHashMap<>();
+    private final Map<String, ClassSummary> summaries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    interface Loader {
+        ClassSummary load() throws IOException;
+    }
+
+    /**
+     * Returns the key of a classpath jar; the hash is computed once per file, path, size and modification time.
+     */
+    String getJarKey(File jar) throws IOException {
+        String fileKey = jar.getAbsolutePath() + '|' + jar.length() + '|' + jar.lastModified();
+        String key = jarKeys.get(fileKey);
+        if (key == null) {
+            key = ClasspathCache.hash(jar.toPath());
+            jarKeys.put(fileKey, key);
+        }
+        return key;
+    }
+
+    static String getJdkKey() {
+        return "jdk:" + System.getProperty("java.home") + '|' + System.getProperty("java.version");
+    }
+
+    /**
+     * Returns the summary of a class from the given source, loading it on the first request. Concurrent first
+     * requests may both load it, but all callers get the same instance. Returns null without caching if the loader
+     * finds nothing.
+     */
+    ClassSummary get(String sourceKey, String name, Loader loader) throws IOException {
+        String key = sourceKey + '/' + name;
+        ClassSummary summary = summaries.get(key);
+        if (summary != null) {
+            hits.increment();
+            return summary;
+        }
+
+        misses.increment();
+        summary = loader.load();
+        if (summary == null) {
+            return null;
+        }
+
+        ClassSummary previous = summaries.putIfAbsent(key, summary);
+        return previous != null ? previous : summary;
+    }
+
+    public String getReport() {
+        return String.format("Shared classpath: %d classes, %d hits, %d misses", summaries.size(), hits.sum(), misses.sum());
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.representation;
+
+import net.fabricmc.stitch.util.ClassSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persists {@link ClassSummary} tables for classpath jars, one file per jar named after the SHA-256 of its contents.
+ * A table only holds the classes looked up so far; new summaries are written back by {@link #save()}, merged with
+ * whatever other readers saved for the same jar in the meantime. Saving holds a lock on {@code <table>.lock}, so
+ * processes sharing the directory add to each other's tables instead of replacing them.
+ */
+class ClasspathCache {
+    // file locks are held per process, so readers within one process take turns here first
+    private static final Map<Path, Object> SAVE_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path directory;
+    private final List<Table> tables = new ArrayList<>();
+    private int hits, misses;
+
+    ClasspathCache(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    Table open(File jar) throws IOException {
+        Table table = new Table(directory.resolve(hash(jar.toPath()) + ".bin"));
+        table.load();
+        tables.add(table);
+        return table;
+    }
+
+    void save() throws IOException {
+        for (Table table : tables) {
+            if (table.dirty) {
+                table.save();
+            }
+        }
+    }
+
+    String getReport() {
+        return String.format("Classpath cache: %d hits, %d misses over %d jars", hits, misses, tables.size());
+    }
+
+    static String hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        try (InputStream stream = Files.newInputStream(file)) {
+            byte[] buffer = new byte[65536];
+            int l;
+            while ((l = stream.read(buffer)) > 0) {
+                digest.update(buffer, 0, l);
+            }
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    class Table {
+        private final Path file;
+        private final Map<String, ClassSummary> summaries = new LinkedHashMap<>();
+        private boolean dirty;
+
+        private Table(Path file) {
+            this.file = file;
+        }
+
+        ClassSummary get(String name, ClassSource.Entry entry) throws IOException {
+            ClassSummary summary = summaries.get(name);
+            if (summary != null) {
+                hits++;
+                return summary;
+            }
+
+            misses++;
+            summary = ClassSummary.read(entry.read());
+            summaries.put(name, summary);
+            dirty = true;
+            return summary;
+        }
+
+        private void load() {
+            if (!Files.exists(file)) {
+                return;
+            }
+
+            try {
+                ClassSummaryFile stored = ClassSummaryFile.open(file);
+                if (stored != null) {
+                    for (String name : stored.getClassNames()) {
+                        summaries.putIfAbsent(name, stored.get(name));
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Ignoring unreadable classpath cache " + file + ": " + e);
+            }
+        }
+
+        private void save() throws IOException {
+            Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+
+            synchronized (SAVE_LOCKS.computeIfAbsent(lockFile.toAbsolutePath(), (k) -> new Object())) {
+                try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    FileLock lock = channel.lock();
+                    try {
+                        // summaries saved by others since this table was opened; a class summarizes the same either way
+                        load();
+                        ClassSummaryFile.write(file, summaries.values());
+                    } finally {
+                        lock.release();
+                    }
+                }
+            }
+
+            dirty = false;
+        }
+    }
+}
@@ -24,11 +24,11 @@ import java.util.stream.Collectors;
 
 public class JarClassEntry extends AbstractJarEntry {
     String fullyQualifiedName;
-    final Map<String, JarClassEntry> innerClasses;
-    final Map<String, JarFieldEntry> fields;
-    final Map<String, JarRecordComponentEntry> recordComponents;
-    final Map<String, JarMethodEntry> methods;
-    final Map<String, Set<Pair<JarClassEntry, String>>> relatedMethods;
+    final MemberTable<JarClassEntry> innerClasses;
+    final MemberTable<JarFieldEntry> fields;
+    final MemberTable<JarRecordComponentEntry> recordComponents;
+    final MemberTable<JarMethodEntry> methods;
+    Map<String, Set<Pair<JarClassEntry, String>>> relatedMethods;
 
     boolean populated;
     boolean isNonObfuscated;
@@ -37,19 +37,58 @@ public class JarClassEntry extends AbstractJarEntry {
     List<String> interfaces;
     List<String> subclasses;
     List<String> implementers;
+    List<BridgeTarget> bridgeTargets;
+    private Links[] links = NO_LINKS;
+
+    private static final Links[] NO_LINKS = new Links[0];
+
+    /**
+     * A method called by a bridge method of this class, as found while reading it.
+     */
+    static final class BridgeTarget {
+        final String bridge;
+        final String owner;
+        final String target;
+
+        BridgeTarget(String bridge, String owner, String target) {
+            this.bridge = bridge;
+            this.owner = owner;
+            this.target = target;
+        }
+    }
+
+    /**
+     * The hierarchy names of this class resolved against one storage.
+     */
+    private static final class Links {
+        final ClassStorage storage;
+        final JarClassEntry superClass;
+        final List<JarClassEntry> interfaces;
+        final List<JarClassEntry> subclasses;
+        final List<JarClassEntry> implementers;
+
+        Links(ClassStorage storage, JarClassEntry superClass, JarClassEntry[] interfaces, JarClassEntry[] subclasses, JarClassEntry[] implementers) {
+            this.storage = storage;
+            this.superClass = superClass;
+            this.interfaces = Collections.unmodifiableList(Arrays.asList(interfaces));
+            this.subclasses = Collections.unmodifiableList(Arrays.asList(subclasses));
+            this.implementers = Collections.unmodifiableList(Arrays.asList(implementers));
+        }
+    }
 
     protected JarClassEntry(String name, String fullyQualifiedName) {
         super(name);
 
         this.fullyQualifiedName = fullyQualifiedName;
-        this.innerClasses = new TreeMap<>(Comparator.naturalOrder());
-        this.fields = new TreeMap<>(Comparator.naturalOrder());
-        this.recordComponents = new TreeMap<>(Comparator.naturalOrder());
-        this.methods = new TreeMap<>(Comparator.naturalOrder());
-        this.relatedMethods = new HashMap<>();
-
-        this.subclasses = new ArrayList<>();
-        this.implementers = new ArrayList<>();
+        this.innerClasses = new MemberTable<>();
+        this.fields = new MemberTable<>();
+        this.recordComponents = new MemberTable<>();
+        this.methods = new MemberTable<>();
+        this.relatedMethods = Collections.emptyMap();
+
+        this.subclasses = Collections.emptyList();
+        this.implementers = Collections.emptyList();
+        this.bridgeTargets = Collections.emptyList();
         this.populated = false;
     }
 
@@ -60,19 +99,106 @@ public class JarClassEntry extends AbstractJarEntry {
         this.interfaces = Arrays.asList(interfaces);
         this.isNonObfuscated = isNonObfuscated;
         this.populated = true;
+        unlink();
     }
 
     protected void populateParents(ClassStorage storage) {
         JarClassEntry superEntry = getSuperClass(storage);
         if (superEntry != null) {
-            superEntry.subclasses.add(fullyQualifiedName);
+            superEntry.subclasses = append(superEntry.subclasses, fullyQualifiedName);
+            superEntry.unlink();
         }
 
         for (JarClassEntry itf : getInterfaces(storage)) {
             if (itf != null) {
-                itf.implementers.add(fullyQualifiedName);
+                itf.implementers = append(itf.implementers, fullyQualifiedName);
+                itf.unlink();
+            }
+        }
+    }
+
+    private static <T> List<T> append(List<T> list, T value) {
+        if (list.isEmpty()) {
+            list = new ArrayList<>(2);
+        }
+
+        list.add(value);
+        return list;
+    }
+
+    void addBridgeTarget(String bridge, String owner, String target) {
+        bridgeTargets = append(bridgeTargets, new BridgeTarget(bridge, owner, target));
+    }
+
+    void addRelatedMethod(String key, JarClassEntry c, String otherKey) {
+        if (relatedMethods.isEmpty()) {
+            relatedMethods = new LinkedHashMap<>();
+        }
+
+        relatedMethods.computeIfAbsent(key, (k) -> new LinkedHashSet<>()).add(Pair.of(c, otherKey));
+    }
+
+    /**
+     * Drops spare capacity in the member tables once the class has been read.
+     */
+    void trim() {
+        innerClasses.trim();
+        fields.trim();
+        recordComponents.trim();
+        methods.trim();
+    }
+
+    /**
+     * Resolves the superclass, interface, subclass and implementer names against the given storage once, so that
+     * later lookups through the same storage return shared, unmodifiable lists. Any change to the names drops the
+     * links again and lookups fall back to resolving names.
+     */
+    void link(ClassStorage storage) {
+        Links linked = new Links(storage,
+                superclass != null ? storage.getClass(superclass, false) : null,
+                resolve(storage, interfaces),
+                resolve(storage, subclasses),
+                resolve(storage, implementers));
+
+        Links[] newLinks = new Links[links.length + 1];
+        int i = 0;
+        for (Links l : links) {
+            if (l.storage != storage) {
+                newLinks[i++] = l;
+            }
+        }
+        newLinks[i++] = linked;
+        links = Arrays.copyOf(newLinks, i);
+    }
+
+    void unlink() {
+        links = NO_LINKS;
+    }
+
+    private Links getLinks(ClassStorage storage) {
+        for (Links l : links) {
+            if (l.storage == storage) {
+                return l;
+            }
+        }
+
+        return null;
+    }
+
+    private static JarClassEntry[] resolve(ClassStorage storage, List<String> names) {
+        if (names == null) {
+            return new JarClassEntry[0];
+        }
+
+        List<JarClassEntry> entries = new ArrayList<>(names.size());
+        for (String name : names) {
+            JarClassEntry entry = storage.getClass(name, false);
+            if (entry != null) {
+                entries.add(entry);
             }
         }
+
+        return entries.toArray(new JarClassEntry[0]);
     }
 
     // unstable
@@ -94,6 +220,11 @@ public class JarClassEntry extends AbstractJarEntry {
     }
 
     public JarClassEntry getSuperClass(ClassStorage storage) {
+        Links l = getLinks(storage);
+        if (l != null) {
+            return l.superClass;
+        }
+
         if (superclass == null) {
             return null;
         }
@@ -105,7 +236,8 @@ public class JarClassEntry extends AbstractJarEntry {
     }
 
     public List<JarClassEntry> getInterfaces(ClassStorage storage) {
-        return toClassEntryList(storage, interfaces);
+        Links l = getLinks(storage);
+        return l != null ? l.interfaces : toClassEntryList(storage, interfaces);
     }
 
     public List<String> getSubclassNames() {
@@ -113,7 +245,8 @@ public class JarClassEntry extends AbstractJarEntry {
     }
 
     public List<JarClassEntry> getSubclasses(ClassStorage storage) {
-        return toClassEntryList(storage, subclasses);
+        Links l = getLinks(storage);
+        return l != null ? l.subclasses : toClassEntryList(storage, subclasses);
     }
 
     public List<String> getImplementerNames() {
@@ -121,7 +254,8 @@ public class JarClassEntry extends AbstractJarEntry {
     }
 
     public List<JarClassEntry> getImplementers(ClassStorage storage) {
-        return toClassEntryList(storage, implementers);
+        Links l = getLinks(storage);
+        return l != null ? l.implementers : toClassEntryList(storage, implementers);
     }
 
     private List<JarClassEntry> toClassEntryList(ClassStorage storage, List<String> stringList) {
@@ -181,6 +315,12 @@ public class JarClassEntry extends AbstractJarEntry {
     }
 
     public void remap(Remapper remapper) {
+        remap(remapper, null);
+    }
+
+    void remap(Remapper remapper, StringPool pool) {
+        unlink();
+
         String oldName = fullyQualifiedName;
         fullyQualifiedName = remapper.map(fullyQualifiedName);
         String[] s = fullyQualifiedName.split("\\$");
@@ -206,29 +346,29 @@ public class JarClassEntry extends AbstractJarEntry {
         methods.clear();
 
         for (Map.Entry<String, JarClassEntry> entry : innerClassOld.entrySet()) {
-            entry.getValue().remap(remapper);
+            entry.getValue().remap(remapper, pool);
             innerClasses.put(entry.getValue().name, entry.getValue());
         }
 
         for (Map.Entry<String, JarFieldEntry> entry : fieldsOld.entrySet()) {
-            entry.getValue().remap(this, oldName, remapper);
+            entry.getValue().remap(this, oldName, remapper, pool);
             fields.put(entry.getValue().getKey(), entry.getValue());
         }
 
         for (Map.Entry<String, JarRecordComponentEntry> entry : recordComponentsOld.entrySet()) {
-            entry.getValue().remap(this, oldName, remapper);
+            entry.getValue().remap(this, oldName, remapper, pool);
             recordComponents.put(entry.getValue().getKey(), entry.getValue());
         }
 
         for (Map.Entry<String, JarMethodEntry> entry : methodsOld.entrySet()) {
-            entry.getValue().remap(this, oldName, remapper);
+            entry.getValue().remap(this, oldName, remapper, pool);
             methods.put(entry.getValue().getKey(), entry.getValue());
             methodKeyRemaps.put(entry.getKey(), entry.getValue().getKey());
         }
 
         // TODO: remap relatedMethods strings???
-        Map<String, Set<Pair<JarClassEntry, String>>> relatedMethodsOld = new HashMap<>(relatedMethods);
-        relatedMethods.clear();
+        Map<String, Set<Pair<JarClassEntry, String>>> relatedMethodsOld = relatedMethods;
+        relatedMethods = relatedMethodsOld.isEmpty() ? Collections.emptyMap() : new HashMap<>();
 
         for (Map.Entry<String, Set<Pair<JarClassEntry, String>>> entry : relatedMethodsOld.entrySet()) {
             relatedMethods.put(methodKeyRemaps.getOrDefault(entry.getKey(), entry.getKey()), entry.getValue());
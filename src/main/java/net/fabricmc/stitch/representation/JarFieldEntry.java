@@ -21,14 +21,17 @@ import org.objectweb.asm.commons.Remapper;
 public class JarFieldEntry extends AbstractJarEntry {
     protected String desc;
     protected String signature;
+    // name + desc, built once and pooled with the reader's other strings; recomputed by remap
+    private String key;
     protected JarRecordComponentEntry recordComponent;
     protected boolean isNonObfuscated;
 
-    JarFieldEntry(int access, String name, String desc, String signature) {
+    JarFieldEntry(int access, String name, String desc, String signature, StringPool pool) {
         super(name);
         this.setAccess(access);
         this.desc = desc;
         this.signature = signature;
+        this.key = StringPool.key(pool, name, desc);
     }
 
     public String getDescriptor() {
@@ -41,13 +44,18 @@ public class JarFieldEntry extends AbstractJarEntry {
 
     @Override
     public String getKey() {
-        return super.getKey() + desc;
+        return key;
     }
 
     public void remap(JarClassEntry classEntry, String oldOwner, Remapper remapper) {
+        remap(classEntry, oldOwner, remapper, null);
+    }
+
+    void remap(JarClassEntry classEntry, String oldOwner, Remapper remapper, StringPool pool) {
         String pastDesc = desc;
 
         name = remapper.mapFieldName(oldOwner, name, pastDesc);
         desc = remapper.mapDesc(pastDesc);
+        key = StringPool.key(pool, name, desc);
     }
 }
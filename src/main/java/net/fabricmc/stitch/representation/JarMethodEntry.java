@@ -24,15 +24,23 @@ import java.util.*;
 public class JarMethodEntry extends AbstractJarEntry {
     protected String desc;
     protected String signature;
+    // name + desc, built once and pooled with the reader's other strings; recomputed by remap
+    private String key;
     protected JarRecordComponentEntry recordComponent;
     protected boolean isNonObfuscated;
+    MethodFamily family;
     protected Set<JarFieldEntry> referencedSelfFields = StitchUtil.newIdentityHashSet();
 
     protected JarMethodEntry(int access, String name, String desc, String signature) {
+        this(access, name, desc, signature, null);
+    }
+
+    JarMethodEntry(int access, String name, String desc, String signature, StringPool pool) {
         super(name);
         this.setAccess(access);
         this.desc = desc;
         this.signature = signature;
+        this.key = StringPool.key(pool, name, desc);
     }
 
     public String getDescriptor() {
@@ -45,7 +53,7 @@ public class JarMethodEntry extends AbstractJarEntry {
 
     @Override
     public String getKey() {
-        return super.getKey() + desc;
+        return key;
     }
 
     public boolean isRecordComponentGetter() {
@@ -56,6 +64,13 @@ public class JarMethodEntry extends AbstractJarEntry {
         return this.recordComponent;
     }
 
+    /**
+     * Returns the family this method was joined into, or null if nothing overrides it.
+     */
+    public MethodFamily getFamily() {
+        return this.family;
+    }
+
     public boolean isAbsolutelyNonObfuscated() {
         return this.isNonObfuscated;
     }
@@ -65,6 +80,11 @@ public class JarMethodEntry extends AbstractJarEntry {
             return true;
         }
 
+        ClassHierarchy hierarchy = storage.getHierarchy();
+        if (hierarchy != null) {
+            return hierarchy.isSource(this, c);
+        }
+
         Set<JarClassEntry> entries = StitchUtil.newIdentityHashSet();
         entries.add(c);
         getMatchingSources(entries, storage, c);
@@ -80,8 +100,13 @@ public class JarMethodEntry extends AbstractJarEntry {
             return Collections.singletonList(c);
         }
 
-        Set<JarClassEntry> entries = StitchUtil.newIdentityHashSet();
-        Set<JarClassEntry> entriesNew = StitchUtil.newIdentityHashSet();
+        ClassHierarchy hierarchy = storage.getHierarchy();
+        if (hierarchy != null) {
+            return hierarchy.getMatchingEntries(this, c, returnOnNonObfuscated);
+        }
+
+        Set<JarClassEntry> entries = new LinkedHashSet<>();
+        Set<JarClassEntry> entriesNew = new LinkedHashSet<>();
         entries.add(c);
         int lastSize = 0;
 
@@ -146,9 +171,14 @@ public class JarMethodEntry extends AbstractJarEntry {
     }
 
     public void remap(JarClassEntry classEntry, String oldOwner, Remapper remapper) {
+        remap(classEntry, oldOwner, remapper, null);
+    }
+
+    void remap(JarClassEntry classEntry, String oldOwner, Remapper remapper, StringPool pool) {
         String pastDesc = desc;
 
         name = remapper.mapMethodName(oldOwner, name, pastDesc);
         desc = remapper.mapMethodDesc(pastDesc);
+        key = StringPool.key(pool, name, desc);
     }
 }
\ No newline at end of file
@@ -16,20 +16,21 @@
 
 package net.fabricmc.stitch.representation;
 
+import net.fabricmc.stitch.util.ClassSource;
 import net.fabricmc.stitch.util.Pair;
 import net.fabricmc.stitch.util.StitchUtil;
 import org.objectweb.asm.*;
 import org.objectweb.asm.commons.Remapper;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.jar.JarInputStream;
+import java.util.concurrent.*;
 
 public class JarReader {
 //    public static class Builder {
@@ -63,7 +64,13 @@ public class JarReader {
     private final LazyClasspathStorage lazyClasspathStorage;
     private boolean joinMethodEntries = true;
     private Remapper remapper;
-    private final Set<Pair<String, String>> functionalInterfaceMethods = new HashSet<>();
+    private int threads = 1;
+    private Path modelCache;
+    private boolean verifyIncremental;
+    private ClassSummaryStore summaryStore;
+    private boolean collectRelatedMethods;
+    private final Set<Pair<String, String>> functionalInterfaceMethods = ConcurrentHashMap.newKeySet();
+    private final StringPool stringPool = new StringPool();
 
     public JarReader(JarRootEntry jar, File classpathDir) {
         this.jar = jar;
@@ -71,6 +78,57 @@ public class JarReader {
         this.lazyClasspathStorage = new LazyClasspathStorage(this.jar, this.classpathDir);
     }
 
+    /**
+     * Sets whether overriding method declarations are joined into one shared entry. On by default.
+     */
+    public void setJoinMethodEntries(boolean joinMethodEntries) {
+        this.joinMethodEntries = joinMethodEntries;
+    }
+
+    /**
+     * Sets the number of threads used to parse the input jar. Values above 1 inflate and visit classes on a
+     * worker pool; the resulting model is the same as with a single thread.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1, got " + threads);
+        }
+
+        this.threads = threads;
+    }
+
+    /**
+     * Loads the analysed model from a snapshot in the given directory when one matches the jar, classpath and JDK,
+     * and writes one after a full run otherwise. Only the snapshots of the most recently used jars are kept there.
+     */
+    public void setModelCache(Path directory) {
+        this.modelCache = directory;
+    }
+
+    /**
+     * Re-analyses the jar from scratch after a model was loaded or updated from the model cache, and fails if the
+     * two models differ.
+     */
+    public void setVerifyIncremental(boolean verifyIncremental) {
+        this.verifyIncremental = verifyIncremental;
+    }
+
+    /**
+     * Takes library classes from, and adds them to, a store shared with other readers instead of parsing them for this
+     * reader alone.
+     */
+    public void setSummaryStore(ClassSummaryStore summaryStore) {
+        this.summaryStore = summaryStore;
+    }
+
+    /**
+     * Records the calls made by bridge methods while reading the jar and links each bridge with the jar method its
+     * call resolves to, for generation to follow between the two.
+     */
+    public void setCollectRelatedMethods(boolean collectRelatedMethods) {
+        this.collectRelatedMethods = collectRelatedMethods;
+    }
+
     private class VisitorClass extends ClassVisitor {
         private JarClassEntry entry;
         private boolean isNonObfuscated;
@@ -87,8 +145,8 @@ public class JarReader {
         @Override
         public void visit(final int version, final int access, final String name, final String signature,
                           final String superName, final String[] interfaces) {
-            this.entry = backing.getClass(name, true);
-            this.entry.populate(access, signature, superName, interfaces, this.isNonObfuscated);
+            this.entry = backing.getClass(stringPool.intern(name), true);
+            this.entry.populate(access, stringPool.intern(signature), stringPool.intern(superName), stringPool.intern(interfaces), this.isNonObfuscated);
 
             this.orderedRecordComponent = new ArrayList<>();
             this.readingRecordComponentIndex = -3; // toString, hashCode, equals
@@ -104,7 +162,7 @@ public class JarReader {
         @Override
         public FieldVisitor visitField(final int access, final String name, final String descriptor,
                                        final String signature, final Object value) {
-            JarFieldEntry field = new JarFieldEntry(access, name, descriptor, signature);
+            JarFieldEntry field = new JarFieldEntry(access, stringPool.intern(name), stringPool.intern(descriptor), stringPool.intern(signature), stringPool);
             this.entry.fields.put(field.getKey(), field);
             field.recordComponent = this.entry.getRecordComponent(field.getKey());
             field.isNonObfuscated = this.isNonObfuscated;
@@ -116,7 +174,7 @@ public class JarReader {
         @Override
         public MethodVisitor visitMethod(final int access, final String name, final String descriptor,
                                          final String signature, final String[] exceptions) {
-            JarMethodEntry method = new JarMethodEntry(access, name, descriptor, signature);
+            JarMethodEntry method = new JarMethodEntry(access, stringPool.intern(name), stringPool.intern(descriptor), stringPool.intern(signature), stringPool);
             this.entry.methods.put(method.getKey(), method);
             method.isNonObfuscated = this.isNonObfuscated;
 
@@ -144,7 +202,7 @@ public class JarReader {
 
         @Override
         public RecordComponentVisitor visitRecordComponent(String name, String descriptor, String signature) {
-            JarRecordComponentEntry recordComponent = new JarRecordComponentEntry(name, descriptor, signature);
+            JarRecordComponentEntry recordComponent = new JarRecordComponentEntry(stringPool.intern(name), stringPool.intern(descriptor), stringPool.intern(signature), stringPool);
             this.entry.recordComponents.put(recordComponent.getKey(), recordComponent);
             recordComponent.isNonObfuscated = this.isNonObfuscated;
             this.orderedRecordComponent.add(recordComponent);
@@ -186,36 +244,9 @@ public class JarReader {
                 System.out.println(String.format("Record %s still have %d unclaimed record getters", this.entry.getFullyQualifiedName(), recordComponentEntries.size()));
             }
 
-            super.visitEnd();
-        }
-    }
-
-    private class VisitorClassStageTwo extends ClassVisitor {
-        private JarClassEntry entry;
-
-        public VisitorClassStageTwo(int api, ClassVisitor classVisitor) {
-            super(api, classVisitor);
-        }
-
-        @Override
-        public void visit(final int version, final int access, final String name, final String signature,
-                          final String superName, final String[] interfaces) {
-            this.entry = jar.getClass(name, true);
-            super.visit(version, access, name, signature, superName, interfaces);
-        }
+            this.entry.trim();
 
-        @Override
-        public MethodVisitor visitMethod(final int access, final String name, final String descriptor,
-                                         final String signature, final String[] exceptions) {
-            JarMethodEntry method = new JarMethodEntry(access, name, descriptor, signature);
-            this.entry.methods.put(method.getKey(), method);
-
-            if ((access & (Opcodes.ACC_BRIDGE | Opcodes.ACC_SYNTHETIC)) != 0) {
-                return new VisitorBridge(api, access, super.visitMethod(access, name, descriptor, signature, exceptions),
-                        entry, method);
-            } else {
-                return super.visitMethod(access, name, descriptor, signature, exceptions);
-            }
+            super.visitEnd();
         }
     }
 
@@ -242,62 +273,12 @@ public class JarReader {
     }
 
 
-    private static class MethodRef {
-        final String owner, name, descriptor;
-
-        MethodRef(String owner, String name, String descriptor) {
-            this.owner = owner;
-            this.name = name;
-            this.descriptor = descriptor;
-        }
-    }
-
-    private class VisitorBridge extends VisitorMethod {
-        private final boolean hasBridgeFlag;
-        private final List<MethodRef> methodRefs = new ArrayList<>();
-
-        public VisitorBridge(int api, int access, MethodVisitor methodVisitor, JarClassEntry classEntry, JarMethodEntry entry) {
-            super(api, methodVisitor, classEntry, entry, -1, null);
-            hasBridgeFlag = ((access & Opcodes.ACC_BRIDGE) != 0);
-        }
-
-        @Override
-        public void visitMethodInsn(
-                final int opcode,
-                final String owner,
-                final String name,
-                final String descriptor,
-                final boolean isInterface) {
-            super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
-            methodRefs.add(new MethodRef(owner, name, descriptor));
-        }
-
-        @Override
-        public void visitEnd() {
-            /* boolean isBridge = hasBridgeFlag;
-
-            if (!isBridge && methodRefs.size() == 1) {
-                System.out.println("Found suspicious bridge-looking method: " + classEntry.getFullyQualifiedName() + ":" + entry);
-            }
-
-            if (isBridge) {
-                for (MethodRef ref : methodRefs) {
-                    JarClassEntry targetClass = jar.getClass(ref.owner, true);
-                    JarMethodEntry targetMethod = new JarMethodEntry(0, ref.name, ref.descriptor, null);
-                    String targetKey = targetMethod.getKey();
-
-                    targetClass.relatedMethods.computeIfAbsent(targetKey, (a) -> new HashSet<>()).add(Pair.of(classEntry, entry.getKey()));
-                    classEntry.relatedMethods.computeIfAbsent(entry.getKey(), (a) -> new HashSet<>()).add(Pair.of(targetClass, targetKey));
-                }
-            } */
-        }
-    }
-
     private class VisitorMethod extends MethodVisitor {
         final JarClassEntry classEntry;
         final JarMethodEntry entry;
         final int readingRecordComponentIndex;
         private final List<JarRecordComponentEntry> orderedRecordComponent;
+        private final boolean collectBridgeTargets;
 
         public VisitorMethod(int api, MethodVisitor methodVisitor, JarClassEntry classEntry, JarMethodEntry entry, int readingRecordComponentIndex, List<JarRecordComponentEntry> orderedRecordComponent) {
             super(api, methodVisitor);
@@ -305,6 +286,7 @@ public class JarReader {
             this.entry = entry;
             this.readingRecordComponentIndex = readingRecordComponentIndex;
             this.orderedRecordComponent = orderedRecordComponent;
+            this.collectBridgeTargets = collectRelatedMethods && (entry.getAccess() & Opcodes.ACC_BRIDGE) != 0;
             this.recordMethodMatchingState = RecordMethodMatchingState.NOT_STARTED;
             if (!entry.desc.startsWith("()")) {
                 this.recordMethodMatchingState = RecordMethodMatchingState.FAIL;
@@ -443,6 +425,9 @@ public class JarReader {
         @Override
         public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
             this.failRecordMatching();
+            if (this.collectBridgeTargets) {
+                this.classEntry.addBridgeTarget(this.entry.getKey(), owner, name + descriptor);
+            }
             super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
         }
 
@@ -537,22 +522,207 @@ public class JarReader {
         }
     }
 
-    public void apply() throws IOException {
-        // Stage 1: read .JAR class/field/method meta
-        try (FileInputStream fileStream = new FileInputStream(jar.file)) {
-            try (JarInputStream jarStream = new JarInputStream(fileStream)) {
-                java.util.jar.JarEntry entry;
+    private void readClasses() throws IOException {
+        try (ClassSource source = ClassSource.open(jar.file)) {
+            for (ClassSource.Entry entry : source.getClassEntries()) {
+                ClassReader reader = new ClassReader(entry.read());
+                ClassVisitor visitor = new VisitorClass(StitchUtil.ASM_VERSION, null, false, jar);
+                reader.accept(visitor, ClassReader.SKIP_FRAMES);
+            }
+        }
+    }
 
-                while ((entry = jarStream.getNextJarEntry()) != null) {
-                    if (!entry.getName().endsWith(".class")) {
-                        continue;
+    private void readClassesParallel() throws IOException {
+        ExecutorService service = Executors.newFixedThreadPool(threads);
+
+        try (ClassSource source = ClassSource.open(jar.file)) {
+            List<Callable<ClassReader>> readTasks = new ArrayList<>();
+
+            for (ClassSource.Entry entry : source.getClassEntries()) {
+                readTasks.add(() -> new ClassReader(entry.read()));
+            }
+
+            List<ClassReader> readers = invokeAll(service, readTasks);
+
+            // Create the entries in jar order first, so allClasses and the class tree come out exactly as they
+            // would when reading serially. Classes present more than once are visited in order by a single task.
+            Map<String, List<ClassReader>> readersByName = new LinkedHashMap<>();
+            for (ClassReader reader : readers) {
+                jar.getClass(reader.getClassName(), true);
+                readersByName.computeIfAbsent(reader.getClassName(), (k) -> new ArrayList<>()).add(reader);
+            }
+
+            List<Callable<Void>> visitTasks = new ArrayList<>();
+            for (List<ClassReader> classReaders : readersByName.values()) {
+                visitTasks.add(() -> {
+                    for (ClassReader reader : classReaders) {
+                        reader.accept(new VisitorClass(StitchUtil.ASM_VERSION, null, false, jar), ClassReader.SKIP_FRAMES);
                     }
+                    return null;
+                });
+            }
 
-                    ClassReader reader = new ClassReader(jarStream);
-                    ClassVisitor visitor = new VisitorClass(StitchUtil.ASM_VERSION, null, false, jar);
-                    reader.accept(visitor, ClassReader.SKIP_FRAMES);
+            invokeAll(service, visitTasks);
+        } finally {
+            service.shutdownNow();
+        }
+    }
+
+    /**
+     * Stage one for runs with a model cache. Every class entry is hashed; classes whose entries are the same as in the
+     * base parse are copied from it, all others are visited. Returns the entries with their hashes.
+     */
+    private List<ModelSnapshot.Source> readClassesTracked(ModelSnapshot base) throws IOException {
+        ExecutorService service = Executors.newFixedThreadPool(threads);
+
+        try (ClassSource source = ClassSource.open(jar.file)) {
+            List<ClassSource.Entry> entries = source.getClassEntries();
+            ClassReader[] readers = new ClassReader[entries.size()];
+            List<Callable<ModelSnapshot.Source>> readTasks = new ArrayList<>();
+
+            for (int i = 0; i < entries.size(); i++) {
+                int index = i;
+                ClassSource.Entry entry = entries.get(i);
+                readTasks.add(() -> {
+                    byte[] bytes = entry.read();
+                    readers[index] = new ClassReader(bytes);
+                    return new ModelSnapshot.Source(entry.getName(), readers[index].getClassName(), ModelSnapshot.sha256(bytes));
+                });
+            }
+
+            List<ModelSnapshot.Source> sources = invokeAll(service, readTasks);
+
+            Map<String, ModelSnapshot.Source> baseSources = new HashMap<>();
+            Map<String, Integer> baseEntryCounts = new HashMap<>();
+            if (base != null) {
+                for (ModelSnapshot.Source baseSource : base.sources) {
+                    baseSources.putIfAbsent(baseSource.entryName, baseSource);
+                    baseEntryCounts.merge(baseSource.className, 1, Integer::sum);
+                }
+            }
+
+            // same order of creation as readClassesParallel
+            Map<String, List<Integer>> entriesByName = new LinkedHashMap<>();
+            for (int i = 0; i < sources.size(); i++) {
+                jar.getClass(sources.get(i).className, true);
+                entriesByName.computeIfAbsent(sources.get(i).className, (k) -> new ArrayList<>()).add(i);
+            }
+
+            List<Callable<Void>> visitTasks = new ArrayList<>();
+            for (Map.Entry<String, List<Integer>> entry : entriesByName.entrySet()) {
+                JarClassEntry previous = base != null ? base.jar.getClass(entry.getKey(), false) : null;
+                boolean unchanged = previous != null && previous.populated
+                        && baseEntryCounts.getOrDefault(entry.getKey(), 0) == entry.getValue().size();
+
+                for (int i = 0; unchanged && i < entry.getValue().size(); i++) {
+                    ModelSnapshot.Source current = sources.get(entry.getValue().get(i));
+                    ModelSnapshot.Source baseSource = baseSources.get(current.entryName);
+                    unchanged = baseSource != null && baseSource.className.equals(current.className)
+                            && Arrays.equals(baseSource.hash, current.hash);
+                }
+
+                if (unchanged) {
+                    copyParsedClass(previous, jar.getClass(entry.getKey(), false));
+                    continue;
                 }
+
+                visitTasks.add(() -> {
+                    for (int i : entry.getValue()) {
+                        readers[i].accept(new VisitorClass(StitchUtil.ASM_VERSION, null, false, jar), ClassReader.SKIP_FRAMES);
+                    }
+                    return null;
+                });
+            }
+
+            invokeAll(service, visitTasks);
+
+            if (base != null) {
+                System.err.println("Reused " + (entriesByName.size() - visitTasks.size()) + " of " + entriesByName.size() + " parsed classes, visited " + visitTasks.size() + ".");
+            }
+
+            return sources;
+        } finally {
+            service.shutdownNow();
+        }
+    }
+
+    private static void copyParsedClass(JarClassEntry from, JarClassEntry to) {
+        to.populate(from.getAccess(), from.signature, from.superclass, from.interfaces.toArray(new String[0]), from.isNonObfuscated);
+        to.recordComponents.putAll(from.recordComponents);
+        to.fields.putAll(from.fields);
+        to.methods.putAll(from.methods);
+        to.bridgeTargets = from.bridgeTargets;
+        to.trim();
+    }
+
+    private static <T> List<T> invokeAll(ExecutorService service, List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+
+        try {
+            for (Future<T> future : service.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             }
+            throw new RuntimeException(e.getCause());
+        }
+
+        return results;
+    }
+
+    /**
+     * The storage that resolves classes of the jar first and of the classpath after it.
+     */
+    ClassStorage getClasspathStorage() {
+        return this.lazyClasspathStorage;
+    }
+
+    public void apply() throws IOException {
+        try {
+            applyStages();
+        } finally {
+            this.lazyClasspathStorage.close();
+            // classpath classes keep loading until remapping has linked everything, so only now is the model complete
+            // and the table would only pin memory from here on
+            stringPool.clear();
+        }
+    }
+
+    private void applyStages() throws IOException {
+        Path snapshot = null;
+        String lineage = null;
+        String name = null;
+        if (modelCache != null && this.jar.file != null) {
+            lineage = ModelSnapshot.getLineage(classpathDir, joinMethodEntries, collectRelatedMethods);
+            name = ModelSnapshot.getName(lineage, this.jar.file);
+            snapshot = modelCache.resolve(name + ".model");
+            if (loadSnapshot(snapshot)) {
+                if (verifyIncremental) {
+                    verifyAgainstColdRun();
+                }
+                return;
+            }
+        }
+
+        // Stage 1: read .JAR class/field/method meta
+        if (lineage != null) {
+            List<ModelSnapshot.Source> sources = readClassesTracked(loadParsedBase(lineage));
+
+            try {
+                ModelSnapshot.write(modelCache.resolve(name + ".parsed"), this.jar, new JarRootEntry(), sources);
+                ModelSnapshot.writeLatest(modelCache, lineage, name);
+            } catch (IOException e) {
+                System.err.println("Could not save parsed classes to " + modelCache + ": " + e);
+            }
+        } else if (threads > 1) {
+            readClassesParallel();
+        } else {
+            readClasses();
         }
 
         System.err.println("Read " + this.jar.getAllClasses().size() + " (" + this.jar.getClasses().size() + ") classes.");
@@ -561,6 +731,14 @@ public class JarReader {
         this.jar.getAllClasses().forEach((c) -> c.populateParents(this.lazyClasspathStorage));
         System.err.println("Populated subclass entries.");
 
+        if (collectRelatedMethods) {
+            resolveRelatedMethods();
+        }
+
+        linkClasses();
+        this.jar.hierarchy = new ClassHierarchy(this.jar);
+        this.lazyClasspathStorage.hierarchy = new ClassHierarchy(this.lazyClasspathStorage);
+
 //        for (Pair<String, String> pair : this.functionalInterfaceMethods) {
 //            String className = pair.getLeft();
 //            String methodKey = pair.getRight();
@@ -578,12 +756,12 @@ public class JarReader {
         if (joinMethodEntries) {
             System.err.println("Joining MethodEntries...");
             Set<JarClassEntry> traversedClasses = StitchUtil.newIdentityHashSet();
+            List<JarClassEntry> joinOrder = new ArrayList<>();
 
             int joinedMethods = 1;
             int uniqueMethods = 0;
 
-            Collection<JarMethodEntry> checkedMethods = StitchUtil.newIdentityHashSet();
-
+            // trees only fix the order in which families pick their canonical method
             for (JarClassEntry entry : jar.getAllClasses()) {
                 if (traversedClasses.contains(entry)) {
                     continue;
@@ -596,65 +774,26 @@ public class JarReader {
                 }
 
                 for (JarClassEntry c : tree.getClasses()) {
-                    for (JarMethodEntry m : c.getMethods()) {
-                        if (!checkedMethods.add(m)) {
-                            continue;
-                        }
-
-                        // get all matching entries
-                        List<JarClassEntry> mList = m.getMatchingEntries(this.lazyClasspathStorage, c, true);
-
-                        if (mList.size() > 1) {
-                            boolean hasNonObfuscated = false;
-                            for (JarClassEntry key : mList) {
-                                JarMethodEntry value = key.getMethod(m.getKey());
-                                hasNonObfuscated |= value.isNonObfuscated;
-                            }
-                            if (hasNonObfuscated) {
-                                for (JarClassEntry key : mList) {
-                                    JarMethodEntry value = key.getMethod(m.getKey());
-                                    value.isNonObfuscated = true;
-                                }
-                            } else {
-                                for (JarClassEntry key : mList) {
-                                    JarMethodEntry value = key.getMethod(m.getKey());
-                                    if (value != m) {
-                                        key.methods.put(m.getKey(), m);
-                                        if (m.recordComponent == null) {
-                                            m.recordComponent = value.recordComponent;
-                                        }
-                                        joinedMethods++;
-                                    }
-                                }
-                            }
-                        }
+                    if (traversedClasses.add(c)) {
+                        joinOrder.add(c);
                     }
                 }
+            }
 
-                traversedClasses.addAll(tree.getClasses());
+            ClassHierarchy hierarchy = this.lazyClasspathStorage.getHierarchy();
+            Map<String, List<List<JarClassEntry>>> groups = hierarchy.getOverrideGroups(joinOrder);
+            if (threads > 1) {
+                joinedMethods += joinFamiliesParallel(hierarchy, groups);
+            } else {
+                for (Map.Entry<String, List<List<JarClassEntry>>> entry : groups.entrySet()) {
+                    joinedMethods += joinFamilies(hierarchy, entry.getKey(), entry.getValue());
+                }
             }
 
             System.err.println("Joined " + joinedMethods + " MethodEntries (" + uniqueMethods + " unique, " + traversedClasses.size() + " classes).");
         }
 
-        System.err.println("Collecting additional information...");
-
-        // Stage 4: collect additional info
-        /* try (FileInputStream fileStream = new FileInputStream(jar.file)) {
-            try (JarInputStream jarStream = new JarInputStream(fileStream)) {
-                java.util.jar.JarEntry entry;
-
-                while ((entry = jarStream.getNextJarEntry()) != null) {
-                    if (!entry.getName().endsWith(".class")) {
-                        continue;
-                    }
-
-                    ClassReader reader = new ClassReader(jarStream);
-                    ClassVisitor visitor = new VisitorClassStageTwo(StitchUtil.ASM_VERSION, null);
-                    reader.accept(visitor, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
-                }
-            }
-        } */
+        this.lazyClasspathStorage.saveCache();
 
         if (remapper != null) {
             System.err.println("Remapping...");
@@ -663,33 +802,323 @@ public class JarReader {
             jar.classTree.clear();
 
             for (Map.Entry<String, JarClassEntry> entry : classTree.entrySet()) {
-                entry.getValue().remap(remapper);
+                entry.getValue().remap(remapper, stringPool);
                 jar.classTree.put(entry.getValue().getKey(), entry.getValue());
             }
+
+            jar.reindex();
+            linkClasses();
+        }
+
+        if (snapshot != null) {
+            try {
+                ModelSnapshot.write(snapshot, this.jar, this.lazyClasspathStorage.classpathCache, Collections.emptyList());
+                System.err.println("Saved model snapshot " + snapshot.getFileName() + ".");
+                ModelSnapshot.evict(modelCache);
+            } catch (IOException e) {
+                System.err.println("Could not save model snapshot " + snapshot + ": " + e);
+            }
+
+            if (verifyIncremental) {
+                verifyAgainstColdRun();
+            }
         }
 
+        System.err.println(stringPool.getReport());
         System.err.println("- Done. -");
     }
 
+    private boolean loadSnapshot(Path file) {
+        if (!Files.exists(file)) {
+            return false;
+        }
+
+        ModelSnapshot snapshot;
+        try {
+            snapshot = ModelSnapshot.read(file);
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable model snapshot " + file + ": " + e);
+            return false;
+        }
+
+        if (snapshot == null) {
+            return false;
+        }
+
+        ModelSnapshot.touch(file);
+        ModelSnapshot.adopt(snapshot.jar, this.jar);
+        ModelSnapshot.adopt(snapshot.classpath, this.lazyClasspathStorage.classpathCache);
+
+        if (collectRelatedMethods) {
+            resolveRelatedMethods();
+        }
+
+        // the classpath itself is not opened again, so only the jar gets links and a hierarchy
+        for (JarClassEntry c : this.jar.getAllClasses()) {
+            c.link(this.jar);
+        }
+        this.jar.hierarchy = new ClassHierarchy(this.jar);
+
+        System.err.println("Loaded model snapshot " + file.getFileName() + " (" + this.jar.getAllClasses().size() + " classes).");
+        return true;
+    }
+
+    private void resolveRelatedMethods() {
+        int related = 0;
+
+        for (JarClassEntry c : this.jar.getAllClasses()) {
+            for (JarClassEntry.BridgeTarget bridgeTarget : c.bridgeTargets) {
+                JarClassEntry owner = this.lazyClasspathStorage.getClass(bridgeTarget.owner, false);
+                JarClassEntry target = owner != null ? findDeclaringClass(owner, bridgeTarget.target) : null;
+
+                // only jar methods get names, so library targets are of no use
+                if (target != null && this.jar.getClass(target.getFullyQualifiedName(), false) == target) {
+                    c.addRelatedMethod(bridgeTarget.bridge, target, bridgeTarget.target);
+                    target.addRelatedMethod(bridgeTarget.target, c, bridgeTarget.bridge);
+                    related++;
+                }
+            }
+        }
+
+        System.err.println("Resolved " + related + " bridge method targets.");
+    }
+
+    /**
+     * The class declaring the method a call on c resolves to: c or its superclasses first, then its interfaces.
+     */
+    private JarClassEntry findDeclaringClass(JarClassEntry c, String key) {
+        for (JarClassEntry s = c; s != null; s = s.getSuperClass(this.lazyClasspathStorage)) {
+            if (s.getMethod(key) != null) {
+                return s;
+            }
+        }
+
+        Set<JarClassEntry> visited = StitchUtil.newIdentityHashSet();
+        Deque<JarClassEntry> queue = new ArrayDeque<>();
+        for (JarClassEntry s = c; s != null; s = s.getSuperClass(this.lazyClasspathStorage)) {
+            queue.addAll(s.getInterfaces(this.lazyClasspathStorage));
+        }
+
+        while (!queue.isEmpty()) {
+            JarClassEntry itf = queue.poll();
+            if (itf == null || !visited.add(itf)) {
+                continue;
+            }
+            if (itf.getMethod(key) != null) {
+                return itf;
+            }
+            queue.addAll(itf.getInterfaces(this.lazyClasspathStorage));
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the stage one parse of the jar most recently read with the same classpath and options, or null.
+     */
+    private ModelSnapshot loadParsedBase(String lineage) {
+        Path latest = modelCache.resolve(lineage + ".latest");
+        if (!Files.exists(latest)) {
+            return null;
+        }
+
+        try {
+            Path file = modelCache.resolve(new String(Files.readAllBytes(latest), StandardCharsets.UTF_8).trim() + ".parsed");
+            return Files.exists(file) ? ModelSnapshot.read(file) : null;
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable parsed classes in " + modelCache + ": " + e);
+            return null;
+        }
+    }
+
+    private void verifyAgainstColdRun() throws IOException {
+        System.err.println("Verifying cached model against a full run...");
+
+        JarRootEntry cold = new JarRootEntry(this.jar.file);
+        JarReader reader = new JarReader(cold, this.classpathDir);
+        reader.joinMethodEntries = this.joinMethodEntries;
+        reader.threads = this.threads;
+        reader.summaryStore = this.summaryStore;
+        reader.collectRelatedMethods = this.collectRelatedMethods;
+        reader.apply();
+
+        byte[] expected = ModelSnapshot.encode(cold, reader.lazyClasspathStorage.classpathCache, Collections.emptyList());
+        byte[] actual = ModelSnapshot.encode(this.jar, this.lazyClasspathStorage.classpathCache, Collections.emptyList());
+        if (!Arrays.equals(expected, actual)) {
+            throw new IllegalStateException("Cached model of " + this.jar.file + " differs from a full run");
+        }
+
+        System.err.println("Cached model matches a full run.");
+    }
+
+    /**
+     * Resolves hierarchy names into direct references for lookups through the jar and through the classpath storage.
+     */
+    private void linkClasses() {
+        for (JarClassEntry c : this.jar.getAllClasses()) {
+            c.link(this.jar);
+            c.link(this.lazyClasspathStorage);
+        }
+
+        // iterate a copy, resolving a name may still load another classpath class
+        for (JarClassEntry c : new ArrayList<>(this.lazyClasspathStorage.classpathCache.getAllClasses())) {
+            c.link(this.lazyClasspathStorage);
+        }
+    }
+
     class LazyClasspathStorage implements ClassStorage {
         private final ClassStorage delegate;
-        private final URLClassLoader classpath;
+        private final File classpathDir;
         private final JarRootEntry classpathCache = new JarRootEntry();
+        // class name -> entry, first source in the classpath dir wins; built on first lookup
+        private Map<String, IndexedClass> index;
+        private final List<ClassSource> sources = new ArrayList<>();
+        private final Set<String> missing = new HashSet<>();
+        private ClasspathCache summaryCache;
+        private JdkIndex jdkIndex;
+        private ClassHierarchy hierarchy;
+        private boolean closed;
 
         public LazyClasspathStorage(ClassStorage delegate, File classpathDir) {
             this.delegate = delegate;
-            List<URL> urls = new ArrayList<>();
-            File[] files = classpathDir.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    try {
-                        urls.add(file.toURI().toURL());
-                    } catch (MalformedURLException e) {
-                        throw new RuntimeException(e);
+            this.classpathDir = classpathDir;
+        }
+
+        private Map<String, IndexedClass> getIndex() throws IOException {
+            if (closed) {
+                throw new IllegalStateException("Classpath " + classpathDir + " is already closed");
+            }
+
+            if (index == null) {
+                index = new HashMap<>();
+                if (System.getProperty("stitch.classpathCache") != null) {
+                    summaryCache = new ClasspathCache(Paths.get(System.getProperty("stitch.classpathCache")));
+                }
+                if (System.getProperty("stitch.jdkIndex") != null) {
+                    jdkIndex = JdkIndex.load(Paths.get(System.getProperty("stitch.jdkIndex")));
+                } else if (summaryCache != null) {
+                    jdkIndex = JdkIndex.loadOrGenerate(Paths.get(System.getProperty("stitch.classpathCache")));
+                }
+
+                File[] files = classpathDir.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        if (!file.isDirectory() && !isArchive(file)) {
+                            continue;
+                        }
+
+                        ClassSource source;
+                        try {
+                            source = ClassSource.open(file);
+                        } catch (IOException e) {
+                            System.err.println("Skipping unreadable classpath entry " + file + ": " + e.getMessage());
+                            continue;
+                        }
+
+                        sources.add(source);
+                        ClasspathCache.Table table = summaryCache != null && file.isFile() ? summaryCache.open(file) : null;
+                        String storeKey = summaryStore != null && file.isFile() ? summaryStore.getJarKey(file) : null;
+
+                        for (ClassSource.Entry entry : source.getClassEntries()) {
+                            String name = entry.getName();
+                            index.putIfAbsent(name.substring(0, name.length() - 6), new IndexedClass(entry, table, storeKey));
+                        }
                     }
                 }
             }
-            this.classpath = new URLClassLoader(urls.toArray(URL[]::new));
+
+            return index;
+        }
+
+        private boolean isArchive(File file) {
+            String name = file.getName().toLowerCase(Locale.ROOT);
+            return name.endsWith(".jar") || name.endsWith(".zip");
+        }
+
+        /**
+         * Releases the opened classpath archives. Classes loaded so far stay available, looking up any other class
+         * fails afterwards.
+         */
+        void close() throws IOException {
+            IOException failure = null;
+
+            for (ClassSource source : sources) {
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+
+            sources.clear();
+            index = null;
+            closed = true;
+
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        private void accept(String name, ClassVisitor visitor) throws IOException {
+            IndexedClass indexed = getIndex().get(name);
+            if (indexed != null) {
+                if (indexed.storeKey != null) {
+                    summaryStore.get(indexed.storeKey, name, () -> indexed.table != null
+                            ? indexed.table.get(name, indexed.entry)
+                            : ClassSummary.read(indexed.entry.read(), true)).accept(visitor);
+                } else if (indexed.table != null) {
+                    indexed.table.get(name, indexed.entry).accept(visitor);
+                } else {
+                    new ClassReader(indexed.entry.read()).accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+                }
+                return;
+            }
+
+            // JDK classes; an index stands in for the running JDK entirely
+            if (jdkIndex != null) {
+                ClassSummary summary = jdkIndex.get(name);
+                if (summary != null) {
+                    summary.accept(visitor);
+                }
+                return;
+            }
+
+            if (summaryStore != null) {
+                ClassSummary summary = summaryStore.get(ClassSummaryStore.getJdkKey(), name, () -> {
+                    try (InputStream resourceAsStream = ClassLoader.getSystemResourceAsStream(name + ".class")) {
+                        return resourceAsStream != null ? ClassSummary.read(resourceAsStream.readAllBytes(), true) : null;
+                    }
+                });
+                if (summary != null) {
+                    summary.accept(visitor);
+                }
+                return;
+            }
+
+            try (InputStream resourceAsStream = ClassLoader.getSystemResourceAsStream(name + ".class")) {
+                if (resourceAsStream != null) {
+                    new ClassReader(resourceAsStream).accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+                }
+            }
+        }
+
+        void saveCache() throws IOException {
+            if (summaryCache != null) {
+                summaryCache.save();
+                System.err.println(summaryCache.getReport());
+            }
+            if (summaryStore != null) {
+                System.err.println(summaryStore.getReport());
+            }
+        }
+
+        @Override
+        public ClassHierarchy getHierarchy() {
+            return hierarchy;
         }
 
         @Override
@@ -705,16 +1134,19 @@ public class JarReader {
             if (entry != null && entry.populated) {
                 return entry;
             }
-            try (InputStream resourceAsStream = this.classpath.getResourceAsStream(name + ".class")) {
-                if (resourceAsStream == null) {
-                    System.out.println("%s not found from classpath".formatted(name));
-                    return null;
-                }
+            if (missing.contains(name)) {
+                return null;
+            }
+            try {
 //                System.out.println("Loading %s from classpath".formatted(name));
-                ClassReader reader = new ClassReader(resourceAsStream);
                 VisitorClass visitor = new VisitorClass(StitchUtil.ASM_VERSION, null, true, this.classpathCache);
-                reader.accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+                accept(name, visitor);
                 JarClassEntry entry1 = visitor.entry;
+                if (entry1 == null) {
+                    missing.add(name);
+                    System.out.println("%s not found from classpath".formatted(name));
+                    return null;
+                }
                 entry1.populateParents(this);
                 return entry1;
             } catch (IOException e) {
@@ -723,4 +1155,124 @@ public class JarReader {
         }
 
     }
+
+    /**
+     * Joins the override groups of each method key as one task on a fork-join pool. Joining a group only reads and
+     * replaces declarations with its own key, so keys are independent of each other; the groups of one key are joined
+     * in order, as later ones may look at the result of earlier ones.
+     */
+    private int joinFamiliesParallel(ClassHierarchy hierarchy, Map<String, List<List<JarClassEntry>>> groups) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        try {
+            return pool.submit(() -> groups.entrySet().parallelStream()
+                    .mapToInt((entry) -> joinFamilies(hierarchy, entry.getKey(), entry.getValue()))
+                    .sum()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static int joinFamilies(ClassHierarchy hierarchy, String key, List<List<JarClassEntry>> groups) {
+        int joined = 0;
+        for (List<JarClassEntry> classes : groups) {
+            joined += joinFamily(hierarchy, key, classes);
+        }
+        return joined;
+    }
+
+    /**
+     * Joins one override group and returns the number of declarations replaced, with the result of the per-method
+     * walk that visited the group's members in order. A group without a non-obfuscated method has every member
+     * replaced by the first non-private, non-static declaration, the first one whose walk reached the others; it takes
+     * the first record component found among the members. Otherwise each non-private, non-static member in turn marks
+     * every declaration its walk reaches before meeting a non-obfuscated one, private and static members included.
+     */
+    private static int joinFamily(ClassHierarchy hierarchy, String key, List<JarClassEntry> classes) {
+        JarClassEntry owner = null;
+        JarMethodEntry m = null;
+        boolean hasNonObfuscated = false;
+        boolean hasRecordComponent = false;
+
+        for (JarClassEntry c : classes) {
+            JarMethodEntry value = c.getMethod(key);
+            hasNonObfuscated |= value.isNonObfuscated;
+            hasRecordComponent |= value.recordComponent != null;
+            if (m == null && !Access.isPrivateOrStatic(value.getAccess())) {
+                owner = c;
+                m = value;
+            }
+        }
+
+        MethodFamily family = new MethodFamily(key, classes, owner, m, hasNonObfuscated);
+
+        if (hasNonObfuscated) {
+            for (JarClassEntry c : classes) {
+                c.getMethod(key).family = family;
+            }
+
+            // a walk stops at the first non-obfuscated method it meets, so what it marks depends on where it starts
+            // and on what earlier walks marked
+            for (JarClassEntry c : classes) {
+                JarMethodEntry value = c.getMethod(key);
+                if (Access.isPrivateOrStatic(value.getAccess())) {
+                    continue;
+                }
+
+                List<JarClassEntry> reached = hierarchy.getMatchingEntries(value, c, true);
+                boolean reachedNonObfuscated = false;
+                for (JarClassEntry cc : reached) {
+                    reachedNonObfuscated |= cc.getMethod(key).isNonObfuscated;
+                }
+
+                if (reached.size() > 1 && reachedNonObfuscated) {
+                    for (JarClassEntry cc : reached) {
+                        cc.getMethod(key).isNonObfuscated = true;
+                    }
+                }
+            }
+
+            return 0;
+        }
+
+        if (m.recordComponent == null && hasRecordComponent) {
+            // first one in the order the per-method walk used to meet them
+            for (JarClassEntry c : hierarchy.getMatchingEntries(m, owner, false)) {
+                JarRecordComponentEntry recordComponent = c.getMethod(key).recordComponent;
+                if (recordComponent != null) {
+                    m.recordComponent = recordComponent;
+                    break;
+                }
+            }
+        }
+
+        int joined = 0;
+        m.family = family;
+
+        for (JarClassEntry c : classes) {
+            if (c.getMethod(key) != m) {
+                c.methods.put(key, m);
+                joined++;
+            }
+        }
+
+        return joined;
+    }
+
+    private static class IndexedClass {
+        final ClassSource.Entry entry;
+        final ClasspathCache.Table table;
+        final String storeKey;
+
+        IndexedClass(ClassSource.Entry entry, ClasspathCache.Table table, String storeKey) {
+            this.entry = entry;
+            this.table = table;
+            this.storeKey = storeKey;
+        }
+    }
 }
@@ -24,60 +24,70 @@ public class JarRootEntry extends AbstractJarEntry implements ClassStorage {
     final File file;
     final Map<String, JarClassEntry> classTree;
     final List<JarClassEntry> allClasses;
+    // fully qualified name -> entry, kept next to the tree so most lookups are a single probe
+    final Map<String, JarClassEntry> classesByName;
+    ClassHierarchy hierarchy;
+
+    // shorter outer class names first
+    private static final Comparator<String> CLASS_TREE_ORDER = Comparator
+            .comparingInt(JarRootEntry::getOuterNameLength)
+            .thenComparing(Comparator.naturalOrder());
 
     public JarRootEntry(File file) {
         super(file.getName());
 
         this.file = file;
-        this.classTree = new TreeMap<>(
-                Comparator
-                        .comparing((String s) -> {
-                            if (s.contains("$")) {
-                                return s.indexOf("$");
-                            } else {
-                                return s.length();
-                            }
-                        })
-                        .thenComparing(Comparator.naturalOrder())
-        );
+        this.classTree = new TreeMap<>(CLASS_TREE_ORDER);
         this.allClasses = new ArrayList<>();
+        this.classesByName = new HashMap<>();
     }
 
     public JarRootEntry() {
         super("");
 
         this.file = null;
-        this.classTree = new TreeMap<>(
-                Comparator
-                        .comparing((String s) -> {
-                            if (s.contains("$")) {
-                                return s.indexOf("$");
-                            } else {
-                                return s.length();
-                            }
-                        })
-                        .thenComparing(Comparator.naturalOrder())
-        );
+        this.classTree = new TreeMap<>(CLASS_TREE_ORDER);
         this.allClasses = new ArrayList<>();
+        this.classesByName = new HashMap<>();
     }
 
+    /**
+     * Creating lookups are serialized on {@link #syncObject} and may be issued from several threads at once.
+     * Plain lookups are not synchronized and must not race with creation.
+     */
     @Override
     public JarClassEntry getClass(String name, boolean create) {
         if (name == null) {
             return null;
         }
 
-        String[] nameSplit = name.split("\\$");
+        if (create) {
+            synchronized (syncObject) {
+                JarClassEntry entry = classesByName.get(name);
+                return entry != null ? entry : findClass(name, true);
+            }
+        }
+
+        JarClassEntry entry = classesByName.get(name);
+        if (entry != null || !name.endsWith("$")) {
+            return entry;
+        }
+
+        // split() drops trailing empty segments, so "a$" walks to "a"
+        return findClass(name, false);
+    }
+
+    private JarClassEntry findClass(String name, boolean create) {
+        String[] nameSplit = splitName(name);
         int i = 0;
 
         JarClassEntry parent;
         JarClassEntry entry = classTree.get(nameSplit[i++]);
         if (entry == null && create) {
             entry = new JarClassEntry(nameSplit[0], nameSplit[0]);
-            synchronized (syncObject) {
-                allClasses.add(entry);
-                classTree.put(entry.getName(), entry);
-            }
+            allClasses.add(entry);
+            classTree.put(entry.getName(), entry);
+            classesByName.put(entry.getFullyQualifiedName(), entry);
         }
 
         StringBuilder fullyQualifiedBuilder = new StringBuilder(nameSplit[0]);
@@ -91,16 +101,68 @@ public class JarRootEntry extends AbstractJarEntry implements ClassStorage {
 
             if (entry == null && create) {
                 entry = new JarClassEntry(nameSplit[i - 1], fullyQualifiedBuilder.toString());
-                synchronized (syncObject) {
-                    allClasses.add(entry);
-                    parent.innerClasses.put(entry.getName(), entry);
-                }
+                allClasses.add(entry);
+                parent.innerClasses.put(entry.getName(), entry);
+                classesByName.put(entry.getFullyQualifiedName(), entry);
             }
         }
 
         return entry;
     }
 
+    /**
+     * Same result as {@code name.split("\\$")}: trailing empty segments are dropped, a leading one is kept.
+     */
+    static String[] splitName(String name) {
+        int end = name.length();
+        while (end > 0 && name.charAt(end - 1) == '$') {
+            end--;
+        }
+
+        if (end == 0) {
+            return name.isEmpty() ? new String[] { name } : new String[0];
+        }
+
+        int count = 1;
+        for (int i = name.indexOf('$'); i >= 0 && i < end; i = name.indexOf('$', i + 1)) {
+            count++;
+        }
+
+        if (count == 1) {
+            return new String[] { end == name.length() ? name : name.substring(0, end) };
+        }
+
+        String[] split = new String[count];
+        int start = 0;
+        for (int i = 0; i < count - 1; i++) {
+            int next = name.indexOf('$', start);
+            split[i] = name.substring(start, next);
+            start = next + 1;
+        }
+        split[count - 1] = name.substring(start, end);
+        return split;
+    }
+
+    private static int getOuterNameLength(String name) {
+        int i = name.indexOf('$');
+        return i >= 0 ? i : name.length();
+    }
+
+    /**
+     * Rebuilds the name index after classes were renamed in place.
+     */
+    void reindex() {
+        classesByName.clear();
+        for (JarClassEntry entry : allClasses) {
+            classesByName.put(entry.getFullyQualifiedName(), entry);
+        }
+    }
+
+    @Override
+    public ClassHierarchy getHierarchy() {
+        return hierarchy;
+    }
+
     public Collection<JarClassEntry> getClasses() {
         return classTree.values();
     }
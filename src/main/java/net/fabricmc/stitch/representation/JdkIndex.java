@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.representation;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Summaries of every class in a JDK runtime image, so that JDK supertypes resolve the same way whichever JVM runs
+ * stitch, without parsing them from jrt on every run.
+ */
+public class JdkIndex {
+    // file locks are held per process, so readers within one process take turns here first
+    private static final Map<Path, Object> GENERATE_LOCKS = new ConcurrentHashMap<>();
+
+    private final ClassSummaryFile summaries;
+
+    private JdkIndex(ClassSummaryFile summaries) {
+        this.summaries = summaries;
+    }
+
+    public int size() {
+        return summaries.size();
+    }
+
+    @Nullable
+    public ClassSummary get(String name) {
+        return summaries.get(name);
+    }
+
+    public static JdkIndex load(Path file) throws IOException {
+        ClassSummaryFile summaries = ClassSummaryFile.open(file);
+        if (summaries == null) {
+            throw new IOException("JDK index " + file + " was written by an incompatible version");
+        }
+
+        return new JdkIndex(summaries);
+    }
+
+    /**
+     * Loads {@code jdk-<release>.bin} for the running JDK from the given directory, generating it first if needed.
+     */
+    public static JdkIndex loadOrGenerate(Path directory) throws IOException {
+        return load(getOrGenerate(directory));
+    }
+
+    /**
+     * Returns the path of {@code jdk-<release>.bin} for the running JDK in the given directory, generating it first if
+     * needed. Generation holds a lock on {@code <file>.lock}, so readers running at the same time, in this process or
+     * another, generate the index once and wait for it.
+     */
+    public static Path getOrGenerate(Path directory) throws IOException {
+        Path file = directory.resolve(getFileName(null));
+        if (Files.exists(file)) {
+            return file;
+        }
+
+        Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        Files.createDirectories(directory);
+
+        synchronized (GENERATE_LOCKS.computeIfAbsent(lockFile.toAbsolutePath(), (k) -> new Object())) {
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    // another reader may have generated it while this one waited
+                    if (!Files.exists(file)) {
+                        System.err.println("Generating JDK index " + file + "...");
+                        generate(null, file);
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+
+        return file;
+    }
+
+    public static String getFileName(@Nullable Path javaHome) throws IOException {
+        return "jdk-" + getRelease(javaHome) + ".bin";
+    }
+
+    /**
+     * Returns the {@code JAVA_VERSION} of the given JDK, or of the running one when javaHome is null.
+     */
+    public static String getRelease(@Nullable Path javaHome) throws IOException {
+        if (javaHome == null) {
+            return System.getProperty("java.version");
+        }
+
+        Path releaseFile = javaHome.resolve("release");
+        if (Files.exists(releaseFile)) {
+            for (String line : Files.readAllLines(releaseFile)) {
+                if (line.startsWith("JAVA_VERSION=")) {
+                    return line.substring("JAVA_VERSION=".length()).replace("\"", "");
+                }
+            }
+        }
+
+        throw new IOException("Could not determine the release of " + javaHome);
+    }
+
+    /**
+     * Summarizes all classes of the JDK at javaHome (or the running one when null) into file.
+     */
+    public static void generate(@Nullable Path javaHome, Path file) throws IOException {
+        List<ClassSummary> summaries = new ArrayList<>();
+
+        try (FileSystem jrt = openJrt(javaHome)) {
+            List<Path> classes;
+            try (Stream<Path> stream = Files.walk(jrt.getPath("/modules"))) {
+                classes = stream
+                        .filter((p) -> p.toString().endsWith(".class") && !p.getFileName().toString().equals("module-info.class"))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+
+            for (Path path : classes) {
+                summaries.add(ClassSummary.read(Files.readAllBytes(path)));
+            }
+        }
+
+        ClassSummaryFile.write(file, summaries);
+        System.err.println("Indexed " + summaries.size() + " JDK classes.");
+    }
+
+    private static FileSystem openJrt(@Nullable Path javaHome) throws IOException {
+        // always a fresh instance: the built-in jrt file system of the running JDK cannot be closed
+        String home = javaHome != null ? javaHome.toString() : System.getProperty("java.home");
+        return FileSystems.newFileSystem(URI.create("jrt:/"), Collections.singletonMap("java.home", home));
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.representation;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A member map kept as sorted parallel arrays. Iterates in natural key order like the TreeMap it replaces, looks keys
+ * up by binary search and holds no arrays of its own until the first put. Not thread-safe.
+ */
+final class MemberTable<V> extends AbstractMap<String, V> {
+    private static final String[] NO_KEYS = new String[0];
+    private static final Object[] NO_VALUES = new Object[0];
+
+    private String[] keys = NO_KEYS;
+    private Object[] values = NO_VALUES;
+    private int size;
+    private Set<String> keyView;
+    private Collection<V> valueView;
+
+    private int indexOf(Object key) {
+        return key instanceof String ? Arrays.binarySearch(keys, 0, size, key) : -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int index) {
+        return (V) values[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public V get(Object key) {
+        int i = indexOf(key);
+        return i >= 0 ? valueAt(i) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public V put(String key, V value) {
+        int i = Arrays.binarySearch(keys, 0, size, key);
+        if (i >= 0) {
+            V old = valueAt(i);
+            values[i] = value;
+            return old;
+        }
+
+        i = -(i + 1);
+        if (size == keys.length) {
+            int capacity = size < 4 ? size + 1 : size + (size >> 1);
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(values, i, values, i + 1, size - i);
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+
+        V old = valueAt(i);
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(values, i + 1, values, i, size - i - 1);
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        keys = NO_KEYS;
+        values = NO_VALUES;
+        size = 0;
+    }
+
+    /**
+     * Drops spare capacity; called once a class has been fully read.
+     */
+    void trim() {
+        if (size == 0) {
+            clear();
+        } else if (size < keys.length) {
+            keys = Arrays.copyOf(keys, size);
+            values = Arrays.copyOf(values, size);
+        }
+    }
+
+    @Override
+    public Set<String> keySet() {
+        if (keyView != null) {
+            return keyView;
+        }
+
+        return keyView = new AbstractSet<>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new TableIterator<>() {
+                    @Override
+                    String at(int index) {
+                        return keys[index];
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Collection<V> values() {
+        if (valueView != null) {
+            return valueView;
+        }
+
+        return valueView = new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new TableIterator<>() {
+                    @Override
+                    V at(int index) {
+                        return valueAt(index);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, V>> iterator() {
+                return new TableIterator<>() {
+                    @Override
+                    Entry<String, V> at(int index) {
+                        return new SimpleImmutableEntry<>(keys[index], valueAt(index));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private abstract class TableIterator<T> implements Iterator<T> {
+        private final String[] expectedKeys = keys;
+        private final int expectedSize = size;
+        private int next;
+
+        abstract T at(int index);
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public T next() {
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            if (keys != expectedKeys || size != expectedSize) {
+                throw new ConcurrentModificationException();
+            }
+            return at(next++);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.representation;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A set of same-keyed method declarations that override one another somewhere in the hierarchy, as joined by
+ * {@link JarReader}. Members of an obfuscated family share a single {@link JarMethodEntry}; members of a
+ * non-obfuscated family keep their own entries.
+ */
+public class MethodFamily {
+    private final String key;
+    private final List<JarClassEntry> classes;
+    private final JarClassEntry owner;
+    private final JarMethodEntry method;
+    private final boolean nonObfuscated;
+
+    MethodFamily(String key, List<JarClassEntry> classes, JarClassEntry owner, JarMethodEntry method, boolean nonObfuscated) {
+        this.key = key;
+        this.classes = Collections.unmodifiableList(classes);
+        this.owner = owner;
+        this.method = method;
+        this.nonObfuscated = nonObfuscated;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * The declaring classes, in the order the join visited them.
+     */
+    public List<JarClassEntry> getClasses() {
+        return classes;
+    }
+
+    /**
+     * The class that declared {@link #getMethod()}.
+     */
+    public JarClassEntry getOwner() {
+        return owner;
+    }
+
+    /**
+     * The declaration every member resolves to; for a non-obfuscated family, the first non-private, non-static one.
+     */
+    public JarMethodEntry getMethod() {
+        return method;
+    }
+
+    public boolean isNonObfuscated() {
+        return nonObfuscated;
+    }
+
+    public boolean contains(JarClassEntry c) {
+        JarMethodEntry m = c.getMethod(key);
+        return m != null && m.family == this;
+    }
+}
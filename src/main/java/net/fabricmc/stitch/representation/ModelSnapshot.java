@@ -0,0 +1,642 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.representation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Binary snapshot of a jar model as left by {@link JarReader#apply()}: the jar's classes plus the classpath classes
+ * loaded for them, with members, hierarchy names, joined method identities, record component links, method families
+ * and non-obfuscated flags. Snapshots are named after a hash of the inputs, so a changed jar or classpath misses.
+ * Stage-one scratch data (referenced self fields) is not kept; related methods are resolved again from the stored
+ * bridge targets.
+ *
+ * <p>The same format also stores the jar as parsed by stage one alone, together with a hash of every class entry, so
+ * that a later run on a slightly different jar can reuse the classes whose entries did not change.
+ *
+ * <p>A cache directory keeps the snapshots of the {@value #KEPT_SNAPSHOTS} jars used most recently, by the time their
+ * files were last written or loaded; {@link #evict(Path)} deletes the rest.
+ */
+final class ModelSnapshot {
+    private static final int MAGIC = 0x53544d53; // STMS
+    private static final int VERSION = 4;
+    // two per update run, for the old and the new jar
+    private static final int KEPT_SNAPSHOTS = 8;
+
+    private static final int FLAG_POPULATED = 1;
+    private static final int FLAG_NON_OBFUSCATED = 2;
+
+    final JarRootEntry jar;
+    final JarRootEntry classpath;
+    final List<Source> sources;
+
+    private ModelSnapshot(JarRootEntry jar, JarRootEntry classpath, List<Source> sources) {
+        this.jar = jar;
+        this.classpath = classpath;
+        this.sources = sources;
+    }
+
+    /**
+     * A class entry of the jar and the SHA-256 of its bytes.
+     */
+    static final class Source {
+        final String entryName;
+        final String className;
+        final byte[] hash;
+
+        Source(String entryName, String className, byte[] hash) {
+            this.entryName = entryName;
+            this.className = className;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Hashes every classpath entry in lookup order, the running JDK, the JDK index and classpath cache the reader
+     * would use and the reader options; snapshots with the same lineage only differ in their jar. Without an explicit
+     * {@code stitch.jdkIndex}, the index of the classpath cache is generated here if missing, so that its hash is the
+     * same from the first run on.
+     */
+    static String getLineage(File classpathDir, boolean joinMethodEntries, boolean collectRelatedMethods) throws IOException {
+        StringBuilder inputs = new StringBuilder();
+        inputs.append(VERSION).append('\n');
+        inputs.append(System.getProperty("java.version")).append('\n');
+        inputs.append(joinMethodEntries).append('\n');
+        inputs.append(collectRelatedMethods).append('\n');
+
+        String classpathCache = System.getProperty("stitch.classpathCache");
+        String jdkIndex = System.getProperty("stitch.jdkIndex");
+        inputs.append(classpathCache).append('\n');
+        inputs.append(jdkIndex).append('\n');
+        if (jdkIndex != null) {
+            inputs.append(hash(Paths.get(jdkIndex))).append('\n');
+        } else if (classpathCache != null) {
+            inputs.append(hash(JdkIndex.getOrGenerate(Paths.get(classpathCache)))).append('\n');
+        }
+
+        File[] classpath = classpathDir.listFiles();
+        if (classpath != null) {
+            for (File file : classpath) {
+                inputs.append(file.getName()).append(' ').append(hash(file.toPath())).append('\n');
+            }
+        }
+
+        return toHex(sha256(inputs.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * The base file name for a jar within a lineage; the full model uses {@code .model}, the stage one parse
+     * {@code .parsed}.
+     */
+    static String getName(String lineage, File jar) throws IOException {
+        return toHex(sha256((lineage + '\n' + ClasspathCache.hash(jar.toPath())).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static String hash(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return ClasspathCache.hash(path);
+        }
+
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(path)) {
+            files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (Path file : files) {
+            builder.append(path.relativize(file)).append('=').append(ClasspathCache.hash(file)).append(';');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write} into fresh roots, or returns null if it was written by another format
+     * version.
+     */
+    static ModelSnapshot read(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.limit() < 8 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            return null;
+        }
+
+        try {
+            buffer.position(8);
+            return new Reader(buffer).read();
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt model snapshot " + file, e);
+        }
+    }
+
+    private static final class Reader {
+        private final ByteBuffer buffer;
+        // member keys are built on load; the string table only shares names and descriptors
+        private final StringPool keys = new StringPool();
+        private String[] strings;
+        private JarClassEntry[] classes;
+        private JarRecordComponentEntry[] recordComponents;
+        private JarMethodEntry[] methods;
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private String string() {
+            int id = buffer.getInt();
+            return id >= 0 ? strings[id] : null;
+        }
+
+        private String[] strings() {
+            int count = buffer.getInt();
+            if (count < 0) {
+                return null;
+            }
+
+            String[] array = new String[count];
+            for (int i = 0; i < count; i++) {
+                array[i] = string();
+            }
+            return array;
+        }
+
+        private List<String> names() {
+            int count = buffer.getInt();
+            if (count == 0) {
+                return Collections.emptyList();
+            }
+
+            List<String> names = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                names.add(string());
+            }
+            return names;
+        }
+
+        ModelSnapshot read() {
+            strings = new String[buffer.getInt()];
+            int[] offsets = new int[strings.length + 1];
+            for (int i = 0; i <= strings.length; i++) {
+                offsets[i] = buffer.getInt();
+            }
+            int stringsStart = buffer.position();
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[offsets[i + 1] - offsets[i]];
+                buffer.get(stringsStart + offsets[i], bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            buffer.position(stringsStart + offsets[strings.length]);
+
+            JarRootEntry jar = new JarRootEntry();
+            JarRootEntry classpath = new JarRootEntry();
+            int jarCount = buffer.getInt();
+            int classpathCount = buffer.getInt();
+            classes = new JarClassEntry[jarCount + classpathCount];
+            recordComponents = new JarRecordComponentEntry[buffer.getInt()];
+            int recordComponentCount = 0;
+
+            for (int i = 0; i < classes.length; i++) {
+                JarRootEntry root = i < jarCount ? jar : classpath;
+                int expected = root.allClasses.size() + 1;
+                JarClassEntry c = root.getClass(string(), true);
+                if (root.allClasses.size() != expected) {
+                    throw new IllegalStateException("Classes out of order at " + c.getFullyQualifiedName());
+                }
+                classes[i] = c;
+
+                int access = buffer.getInt();
+                int flags = buffer.getInt();
+                String signature = string();
+                String superclass = string();
+                String[] interfaces = strings();
+                if ((flags & FLAG_POPULATED) != 0) {
+                    c.populate(access, signature, superclass, interfaces, (flags & FLAG_NON_OBFUSCATED) != 0);
+                } else {
+                    c.setAccess(access);
+                    c.signature = signature;
+                    c.superclass = superclass;
+                    c.isNonObfuscated = (flags & FLAG_NON_OBFUSCATED) != 0;
+                }
+
+                c.subclasses = names();
+                c.implementers = names();
+
+                for (int j = buffer.getInt(); j > 0; j--) {
+                    String name = string();
+                    String desc = string();
+                    JarRecordComponentEntry recordComponent = new JarRecordComponentEntry(name, desc, string(), keys);
+                    recordComponent.setAccess(buffer.getInt());
+                    recordComponent.isNonObfuscated = buffer.getInt() != 0;
+                    c.recordComponents.put(recordComponent.getKey(), recordComponent);
+                    recordComponents[recordComponentCount++] = recordComponent;
+                }
+
+                for (int j = buffer.getInt(); j > 0; j--) {
+                    String name = string();
+                    String desc = string();
+                    JarFieldEntry field = new JarFieldEntry(0, name, desc, string(), keys);
+                    field.setAccess(buffer.getInt());
+                    field.isNonObfuscated = buffer.getInt() != 0;
+                    field.recordComponent = recordComponent(buffer.getInt());
+                    c.fields.put(field.getKey(), field);
+                }
+
+                for (int j = buffer.getInt(); j > 0; j--) {
+                    c.addBridgeTarget(string(), string(), string());
+                }
+            }
+
+            methods = new JarMethodEntry[buffer.getInt()];
+            int[] methodFamilies = new int[methods.length];
+            for (int i = 0; i < methods.length; i++) {
+                String name = string();
+                String desc = string();
+                JarMethodEntry method = new JarMethodEntry(0, name, desc, string(), keys);
+                method.setAccess(buffer.getInt());
+                method.isNonObfuscated = buffer.getInt() != 0;
+                method.recordComponent = recordComponent(buffer.getInt());
+                methodFamilies[i] = buffer.getInt();
+                methods[i] = method;
+            }
+
+            for (JarClassEntry c : classes) {
+                for (int j = buffer.getInt(); j > 0; j--) {
+                    JarMethodEntry method = methods[buffer.getInt()];
+                    c.methods.put(method.getKey(), method);
+                }
+                c.trim();
+            }
+
+            MethodFamily[] families = new MethodFamily[buffer.getInt()];
+            for (int i = 0; i < families.length; i++) {
+                String key = string();
+                int owner = buffer.getInt();
+                int method = buffer.getInt();
+                boolean nonObfuscated = buffer.getInt() != 0;
+                List<JarClassEntry> members = new ArrayList<>();
+                for (int j = buffer.getInt(); j > 0; j--) {
+                    members.add(classes[buffer.getInt()]);
+                }
+                families[i] = new MethodFamily(key, members, owner >= 0 ? classes[owner] : null, method >= 0 ? methods[method] : null, nonObfuscated);
+            }
+
+            for (int i = 0; i < methods.length; i++) {
+                if (methodFamilies[i] >= 0) {
+                    methods[i].family = families[methodFamilies[i]];
+                }
+            }
+
+            List<Source> sources = new ArrayList<>();
+            for (int i = buffer.getInt(); i > 0; i--) {
+                String entryName = string();
+                String className = string();
+                byte[] hash = new byte[buffer.getInt()];
+                buffer.get(hash);
+                sources.add(new Source(entryName, className, hash));
+            }
+
+            return new ModelSnapshot(jar, classpath, sources);
+        }
+
+        private JarRecordComponentEntry recordComponent(int id) {
+            return id >= 0 ? recordComponents[id] : null;
+        }
+    }
+
+    /**
+     * Moves the classes of a snapshot root into an empty root.
+     */
+    static void adopt(JarRootEntry from, JarRootEntry to) {
+        to.classTree.putAll(from.classTree);
+        to.allClasses.addAll(from.allClasses);
+        to.classesByName.putAll(from.classesByName);
+    }
+
+    /**
+     * Writes the snapshot next to its destination and moves it into place, so concurrent readers never see a partial
+     * file.
+     */
+    static void write(Path file, JarRootEntry jar, JarRootEntry classpath, List<Source> sources) throws IOException {
+        byte[] data = encode(jar, classpath, sources);
+
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, data);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Records the named snapshot as the latest in its lineage. Readers running concurrently may race, the last one
+     * wins.
+     */
+    static void writeLatest(Path directory, String lineage, String name) throws IOException {
+        Path tmp = Files.createTempFile(directory, lineage, ".tmp");
+        try {
+            Files.write(tmp, name.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, directory.resolve(lineage + ".latest"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Marks a loaded snapshot as used, so that {@link #evict(Path)} keeps it.
+     */
+    static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // only makes the snapshot an earlier candidate for eviction
+        }
+    }
+
+    /**
+     * Deletes the snapshots of all but the {@value #KEPT_SNAPSHOTS} most recently used jars in the directory, and the
+     * lineage pointers left without a target. Snapshots another process is about to load may go too; readers treat a
+     * missing or unreadable snapshot as a miss.
+     */
+    static void evict(Path directory) throws IOException {
+        Map<String, FileTime> used = new HashMap<>();
+        List<Path> latest = new ArrayList<>();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String fileName = file.getFileName().toString();
+                if (fileName.endsWith(".model") || fileName.endsWith(".parsed")) {
+                    FileTime time;
+                    try {
+                        time = Files.getLastModifiedTime(file);
+                    } catch (IOException e) {
+                        continue; // deleted concurrently
+                    }
+                    used.merge(fileName.substring(0, fileName.lastIndexOf('.')), time, (a, b) -> a.compareTo(b) >= 0 ? a : b);
+                } else if (fileName.endsWith(".latest")) {
+                    latest.add(file);
+                }
+            }
+        }
+
+        List<String> names = new ArrayList<>(used.keySet());
+        names.sort((a, b) -> used.get(b).compareTo(used.get(a)));
+
+        for (String name : names.subList(Math.min(KEPT_SNAPSHOTS, names.size()), names.size())) {
+            deleteQuietly(directory.resolve(name + ".model"));
+            deleteQuietly(directory.resolve(name + ".parsed"));
+            used.remove(name);
+        }
+
+        for (Path file : latest) {
+            try {
+                if (!used.containsKey(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim())) {
+                    deleteQuietly(file);
+                }
+            } catch (IOException e) {
+                // replaced or deleted concurrently
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // still mapped by a reader on some platforms, the next eviction retries
+        }
+    }
+
+    static byte[] encode(JarRootEntry jar, JarRootEntry classpath, List<Source> sources) throws IOException {
+        return new Writer().encode(jar, classpath, sources);
+    }
+
+    private static final class Writer {
+        private final Map<String, Integer> stringIds = new LinkedHashMap<>();
+        private final Map<JarClassEntry, Integer> classIds = new IdentityHashMap<>();
+        private final Map<JarRecordComponentEntry, Integer> recordComponentIds = new IdentityHashMap<>();
+        private final Map<JarMethodEntry, Integer> methodIds = new IdentityHashMap<>();
+        private final Map<MethodFamily, Integer> familyIds = new IdentityHashMap<>();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(body);
+
+        private void string(String s) throws IOException {
+            if (s == null) {
+                out.writeInt(-1);
+                return;
+            }
+
+            Integer id = stringIds.get(s);
+            if (id == null) {
+                id = stringIds.size();
+                stringIds.put(s, id);
+            }
+            out.writeInt(id);
+        }
+
+        private void strings(Collection<String> strings) throws IOException {
+            if (strings == null) {
+                out.writeInt(-1);
+                return;
+            }
+
+            out.writeInt(strings.size());
+            for (String s : strings) {
+                string(s);
+            }
+        }
+
+        private int id(Map<JarRecordComponentEntry, Integer> ids, JarRecordComponentEntry entry) {
+            return entry != null ? ids.get(entry) : -1;
+        }
+
+        byte[] encode(JarRootEntry jar, JarRootEntry classpath, List<Source> sources) throws IOException {
+            List<JarClassEntry> classes = new ArrayList<>(jar.allClasses);
+            classes.addAll(classpath.allClasses);
+            for (JarClassEntry c : classes) {
+                classIds.put(c, classIds.size());
+                for (JarRecordComponentEntry recordComponent : c.getRecordComponents()) {
+                    recordComponentIds.put(recordComponent, recordComponentIds.size());
+                }
+            }
+
+            out.writeInt(jar.allClasses.size());
+            out.writeInt(classpath.allClasses.size());
+            out.writeInt(recordComponentIds.size());
+
+            for (JarClassEntry c : classes) {
+                string(c.getFullyQualifiedName());
+                out.writeInt(c.getAccess());
+                out.writeInt((c.populated ? FLAG_POPULATED : 0) | (c.isNonObfuscated ? FLAG_NON_OBFUSCATED : 0));
+                string(c.signature);
+                string(c.superclass);
+                strings(c.interfaces);
+                strings(c.subclasses);
+                strings(c.implementers);
+
+                out.writeInt(c.recordComponents.size());
+                for (JarRecordComponentEntry recordComponent : c.getRecordComponents()) {
+                    string(recordComponent.getName());
+                    string(recordComponent.getDescriptor());
+                    string(recordComponent.getSignature());
+                    out.writeInt(recordComponent.getAccess());
+                    out.writeInt(recordComponent.isNonObfuscated ? 1 : 0);
+                }
+
+                out.writeInt(c.fields.size());
+                for (JarFieldEntry field : c.getFields()) {
+                    string(field.getName());
+                    string(field.getDescriptor());
+                    string(field.getSignature());
+                    out.writeInt(field.getAccess());
+                    out.writeInt(field.isNonObfuscated ? 1 : 0);
+                    out.writeInt(id(recordComponentIds, field.recordComponent));
+                }
+
+                out.writeInt(c.bridgeTargets.size());
+                for (JarClassEntry.BridgeTarget bridgeTarget : c.bridgeTargets) {
+                    string(bridgeTarget.bridge);
+                    string(bridgeTarget.owner);
+                    string(bridgeTarget.target);
+                }
+            }
+
+            List<JarMethodEntry> methods = new ArrayList<>();
+            List<MethodFamily> families = new ArrayList<>();
+            for (JarClassEntry c : classes) {
+                for (JarMethodEntry method : c.getMethods()) {
+                    if (methodIds.putIfAbsent(method, methods.size()) == null) {
+                        methods.add(method);
+                    }
+                    if (method.family != null && familyIds.putIfAbsent(method.family, families.size()) == null) {
+                        families.add(method.family);
+                    }
+                }
+            }
+
+            out.writeInt(methods.size());
+            for (JarMethodEntry method : methods) {
+                string(method.getName());
+                string(method.getDescriptor());
+                string(method.getSignature());
+                out.writeInt(method.getAccess());
+                out.writeInt(method.isNonObfuscated ? 1 : 0);
+                out.writeInt(id(recordComponentIds, method.recordComponent));
+                out.writeInt(method.family != null ? familyIds.get(method.family) : -1);
+            }
+
+            for (JarClassEntry c : classes) {
+                out.writeInt(c.methods.size());
+                for (JarMethodEntry method : c.getMethods()) {
+                    out.writeInt(methodIds.get(method));
+                }
+            }
+
+            out.writeInt(families.size());
+            for (MethodFamily family : families) {
+                string(family.getKey());
+                Integer owner = family.getOwner() != null ? classIds.get(family.getOwner()) : null;
+                out.writeInt(owner != null ? owner : -1);
+                Integer method = family.getMethod() != null ? methodIds.get(family.getMethod()) : null;
+                out.writeInt(method != null ? method : -1);
+                out.writeInt(family.isNonObfuscated() ? 1 : 0);
+                out.writeInt(family.getClasses().size());
+                for (JarClassEntry c : family.getClasses()) {
+                    Integer id = classIds.get(c);
+                    if (id == null) {
+                        throw new IOException("Method family " + family.getKey() + " refers to unknown class " + c.getFullyQualifiedName());
+                    }
+                    out.writeInt(id);
+                }
+            }
+
+            out.writeInt(sources.size());
+            for (Source source : sources) {
+                string(source.entryName);
+                string(source.className);
+                out.writeInt(source.hash.length);
+                out.write(source.hash);
+            }
+
+            ByteArrayOutputStream file = new ByteArrayOutputStream(body.size() + 16 * stringIds.size());
+            DataOutputStream fileOut = new DataOutputStream(file);
+            fileOut.writeInt(MAGIC);
+            fileOut.writeInt(VERSION);
+
+            List<byte[]> encoded = new ArrayList<>(stringIds.size());
+            fileOut.writeInt(stringIds.size());
+            int offset = 0;
+            for (String s : stringIds.keySet()) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                fileOut.writeInt(offset);
+                offset += bytes.length;
+            }
+            fileOut.writeInt(offset);
+            for (byte[] bytes : encoded) {
+                fileOut.write(bytes);
+            }
+
+            body.writeTo(fileOut);
+            return file.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.representation;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deduplicates the names, descriptors and signatures that ASM hands out as fresh strings for every class. Unlike
+ * {@link String#intern()} it is an ordinary map that is dropped together with its reader. Safe for concurrent use.
+ */
+class StringPool {
+    private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+
+    String intern(String s) {
+        if (s == null) {
+            return null;
+        }
+
+        String pooled = strings.putIfAbsent(s, s);
+        if (pooled == null) {
+            return s;
+        }
+
+        duplicates.increment();
+        savedBytes.add(estimateSize(s));
+        return pooled;
+    }
+
+    /**
+     * Builds a member key, name + desc, through the pool if there is one, so equal keys of different classes share
+     * one string.
+     */
+    static String key(StringPool pool, String name, String desc) {
+        String key = name + desc;
+        return pool != null ? pool.intern(key) : key;
+    }
+
+    /**
+     * Interns every element in place and returns the same array.
+     */
+    String[] intern(String[] array) {
+        if (array != null) {
+            for (int i = 0; i < array.length; i++) {
+                array[i] = intern(array[i]);
+            }
+        }
+
+        return array;
+    }
+
+    // String object plus its byte[], assuming compact Latin-1 storage and 8-byte alignment
+    private static long estimateSize(String s) {
+        return 24 + ((16 + s.length() + 7) & ~7);
+    }
+
+    /**
+     * Forgets the pooled strings; strings handed out so far stay shared.
+     */
+    void clear() {
+        strings.clear();
+    }
+
+    String getReport() {
+        return String.format("String pool: %d strings, %d duplicates (~%d KiB) dropped", strings.size(), duplicates.sum(), savedBytes.sum() / 1024);
+    }
+}
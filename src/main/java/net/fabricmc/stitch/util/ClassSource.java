@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.util;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read-only collection of named entries, such as the contents of a jar or a class directory.
+ * Entries are listed up front and their contents are only read on request; reads may come from several threads at once.
+ */
+public interface ClassSource extends Closeable {
+    /**
+     * Returns all file entries in source order, using '/' as the separator. Directories are not listed.
+     */
+    List<Entry> getEntries();
+
+    /**
+     * Returns the first entry with the given name, or null if there is none.
+     */
+    @Nullable
+    Entry getEntry(String name);
+
+    default List<Entry> getClassEntries() {
+        List<Entry> entries = new ArrayList<>();
+
+        for (Entry entry : getEntries()) {
+            if (entry.isClass()) {
+                entries.add(entry);
+            }
+        }
+
+        return entries;
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    interface Entry {
+        String getName();
+
+        FileTime getLastModifiedTime();
+
+        default FileTime getLastAccessTime() {
+            return getLastModifiedTime();
+        }
+
+        default FileTime getCreationTime() {
+            return getLastModifiedTime();
+        }
+
+        byte[] read() throws IOException;
+
+        default boolean isClass() {
+            return getName().endsWith(".class");
+        }
+    }
+
+    static ClassSource open(File file) throws IOException {
+        return open(file.toPath());
+    }
+
+    /**
+     * Opens a directory or a zip/jar file.
+     */
+    static ClassSource open(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            return new DirectoryClassSource(path);
+        } else {
+            return new ZipClassSource(path);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lists a directory tree once, in name order; files are read when requested.
+ */
+final class DirectoryClassSource implements ClassSource {
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Entry> entriesByName = new HashMap<>();
+
+    DirectoryClassSource(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    String name = root.relativize(file).toString().replace(File.separatorChar, '/');
+                    entries.add(new FileEntry(name, file, attrs));
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        entries.sort(Comparator.comparing(Entry::getName));
+
+        for (Entry entry : entries) {
+            entriesByName.put(entry.getName(), entry);
+        }
+    }
+
+    @Override
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    @Override
+    public Entry getEntry(String name) {
+        return entriesByName.get(name);
+    }
+
+    private static class FileEntry implements Entry {
+        private final String name;
+        private final Path file;
+        private final BasicFileAttributes attrs;
+
+        FileEntry(String name, Path file, BasicFileAttributes attrs) {
+            this.name = name;
+            this.file = file;
+            this.attrs = attrs;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public FileTime getLastModifiedTime() {
+            return attrs.lastModifiedTime();
+        }
+
+        @Override
+        public FileTime getLastAccessTime() {
+            return attrs.lastAccessTime();
+        }
+
+        @Override
+        public FileTime getCreationTime() {
+            return attrs.creationTime();
+        }
+
+        @Override
+        public byte[] read() throws IOException {
+            return Files.readAllBytes(file);
+        }
+    }
+}
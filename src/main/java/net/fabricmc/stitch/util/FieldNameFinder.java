@@ -30,9 +30,7 @@ import org.objectweb.asm.tree.analysis.Frame;
 import org.objectweb.asm.tree.analysis.SourceInterpreter;
 import org.objectweb.asm.tree.analysis.SourceValue;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -41,8 +39,6 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.jar.JarEntry;
-import java.util.jar.JarInputStream;
 
 public class FieldNameFinder {
 
@@ -159,32 +155,20 @@ public class FieldNameFinder {
 	}
 
 	public Map<EntryTriple, String> findNames(File file) {
-		List<byte[]> byteArrays = new ArrayList<>();
-
-		try {
-			try (FileInputStream fis = new FileInputStream(file);
-				 JarInputStream jis = new JarInputStream(fis)) {
-				byte[] buffer = new byte[32768];
-				JarEntry entry;
-
-				while ((entry = jis.getNextJarEntry()) != null) {
-					if (!entry.getName().endsWith(".class")) {
-						continue;
-					}
-
-					ByteArrayOutputStream stream = new ByteArrayOutputStream();
-					int l;
-					while ((l = jis.read(buffer, 0, buffer.length)) > 0) {
-						stream.write(buffer, 0, l);
-					}
-
-					byteArrays.add(stream.toByteArray());
-				}
-			}
-
-			return findNames(byteArrays);
+		try (ClassSource source = ClassSource.open(file)) {
+			return findNames(source);
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
 	}
+
+	public Map<EntryTriple, String> findNames(ClassSource source) throws Exception {
+		List<byte[]> byteArrays = new ArrayList<>();
+
+		for (ClassSource.Entry entry : source.getClassEntries()) {
+			byteArrays.add(entry.read());
+		}
+
+		return findNames(byteArrays);
+	}
 }
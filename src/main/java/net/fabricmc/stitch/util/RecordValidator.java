@@ -27,11 +27,6 @@ import org.objectweb.asm.tree.RecordComponentNode;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileVisitResult;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -42,33 +37,20 @@ public class RecordValidator implements AutoCloseable {
 			"equals(Ljava/lang/Object;)Z"
 	};
 
-	private final StitchUtil.FileSystemDelegate inputFs;
-	private final Path inputJar;
+	private final ClassSource input;
 	private final boolean printInfo;
 
 	private final List<String> errors = new LinkedList<>();
 
 	public RecordValidator(File jarFile, boolean printInfo) throws IOException {
-		this.inputJar = (inputFs = StitchUtil.getJarFileSystem(jarFile, false)).get().getPath("/");
+		this.input = ClassSource.open(jarFile);
 		this.printInfo = printInfo;
 	}
 
 	public void validate() throws IOException, RecordValidationException {
-		Files.walkFileTree(inputJar, new SimpleFileVisitor<Path>() {
-			@Override
-			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-				if (attrs.isDirectory()) {
-					return FileVisitResult.CONTINUE;
-				}
-
-				if (file.getFileName().toString().endsWith(".class")) {
-					byte[] classBytes = Files.readAllBytes(file);
-					validateClass(classBytes);
-				}
-
-				return FileVisitResult.CONTINUE;
-			}
-		});
+		for (ClassSource.Entry entry : input.getClassEntries()) {
+			validateClass(entry.read());
+		}
 
 		if (!errors.isEmpty()) {
 			throw new RecordValidationException(errors);
@@ -197,7 +179,7 @@ public class RecordValidator implements AutoCloseable {
 
 	@Override
 	public void close() throws Exception {
-		inputFs.close();
+		input.close();
 	}
 
 	public static class RecordValidationException extends Exception {
@@ -0,0 +1,450 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Memory-maps a zip file and parses its central directory once; entries are inflated straight out of the mapping.
+ */
+final class ZipClassSource implements ClassSource {
+    private static final int LOC_SIG = 0x04034b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_LOC_SIG = 0x07064b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int LOC_HEADER = 30;
+    private static final int CEN_HEADER = 46;
+    private static final int END_HEADER = 22;
+    private static final int ZIP64_LOC_HEADER = 20;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private static final int EXTID_ZIP64 = 0x0001;
+    private static final int EXTID_EXTT = 0x5455;
+    private static final int EXTID_NTFS = 0x000a;
+    // indices into an entry's times
+    private static final int MODIFIED = 0;
+    private static final int ACCESSED = 1;
+    private static final int CREATED = 2;
+
+    // milliseconds between the Windows epoch (1601) and the Unix epoch
+    private static final long WINDOWS_EPOCH_OFFSET = 11644473600000L;
+
+    private final Path path;
+    private final ByteBuffer buffer;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Entry> entriesByName = new HashMap<>();
+    private final Deque<Inflater> inflaters = new ArrayDeque<>();
+    // guarded by inflaters
+    private boolean closed;
+
+    ZipClassSource(Path path) throws IOException {
+        this.path = path;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Cannot map " + path + ", file too large (" + size + " bytes)");
+            }
+
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        readCentralDirectory();
+    }
+
+    private void readCentralDirectory() throws IOException {
+        int end = findEnd();
+        int endRecord = end;
+        long cenSize = u32(end + 12);
+        long cenOffset = u32(end + 16);
+
+        if (cenSize == 0xFFFFFFFFL || cenOffset == 0xFFFFFFFFL || u16(end + 10) == 0xFFFF) {
+            int locator = end - ZIP64_LOC_HEADER;
+            if (locator >= 0 && buffer.getInt(locator) == ZIP64_LOC_SIG) {
+                endRecord = checkedOffset(u64(locator + 8));
+                if (buffer.getInt(endRecord) != ZIP64_END_SIG) {
+                    throw new IOException("Invalid zip64 end record in " + path);
+                }
+
+                cenSize = u64(endRecord + 40);
+                cenOffset = u64(endRecord + 48);
+            }
+        }
+
+        // Data prepended to the archive (e.g. a launcher script) shifts every stored offset by the same amount.
+        int cenStart = checkedOffset(endRecord - cenSize);
+        long prefix = cenStart - cenOffset;
+        if (prefix < 0) {
+            throw new IOException("Invalid central directory offset in " + path);
+        }
+
+        int cenEnd = cenStart + (int) cenSize;
+        int pos = cenStart;
+
+        while (pos < cenEnd) {
+            if (pos + CEN_HEADER > cenEnd || buffer.getInt(pos) != CEN_SIG) {
+                throw new IOException("Invalid central directory header in " + path);
+            }
+
+            int method = u16(pos + 10);
+            int dosTime = buffer.getInt(pos + 12);
+            long compressedSize = u32(pos + 20);
+            long size = u32(pos + 24);
+            int nameLength = u16(pos + 28);
+            int extraLength = u16(pos + 30);
+            int commentLength = u16(pos + 32);
+            long localOffset = u32(pos + 42);
+            long[] times = { -1, -1, -1 };
+            boolean extendedTime = false;
+
+            byte[] nameBytes = new byte[nameLength];
+            buffer.get(pos + CEN_HEADER, nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            int extra = pos + CEN_HEADER + nameLength;
+            int extraEnd = extra + extraLength;
+
+            while (extra + 4 <= extraEnd) {
+                int id = u16(extra);
+                int length = u16(extra + 2);
+                int data = extra + 4;
+
+                if (id == EXTID_ZIP64) {
+                    // Only the fields saturated in the fixed header are present, in this order.
+                    int field = data;
+                    if (size == 0xFFFFFFFFL && field + 8 <= data + length) {
+                        size = u64(field);
+                        field += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL && field + 8 <= data + length) {
+                        compressedSize = u64(field);
+                        field += 8;
+                    }
+                    if (localOffset == 0xFFFFFFFFL && field + 8 <= data + length) {
+                        localOffset = u64(field);
+                    }
+                } else if (id == EXTID_EXTT && length >= 1) {
+                    // the central copy only carries the modification time, the local one has the rest
+                    extendedTime = true;
+                    if (length >= 5 && (buffer.get(data) & 1) != 0) {
+                        times[MODIFIED] = u32(data + 1) * 1000L;
+                    }
+                } else if (id == EXTID_NTFS && length >= 32) {
+                    readNtfsTimes(data + 4, data + length, times);
+                }
+
+                extra = data + length;
+            }
+
+            pos += CEN_HEADER + nameLength + extraLength + commentLength;
+
+            if (name.endsWith("/")) {
+                continue;
+            }
+
+            ZipEntry entry = new ZipEntry(name, method, checkedOffset(compressedSize), checkedSize(size),
+                    checkedOffset(localOffset + prefix), dosTime, times, extendedTime);
+            entries.add(entry);
+            entriesByName.putIfAbsent(name, entry);
+        }
+    }
+
+    // attribute 1 of the NTFS extra field holds modification, access and creation time in 100ns units since 1601
+    private void readNtfsTimes(int pos, int end, long[] times) {
+        while (pos + 4 <= end) {
+            int tag = u16(pos);
+            int size = u16(pos + 2);
+            if (tag == 1 && size == 24 && pos + 28 <= end) {
+                for (int i = 0; i < 3; i++) {
+                    times[i] = u64(pos + 4 + i * 8) / 10_000 - WINDOWS_EPOCH_OFFSET;
+                }
+            }
+            pos += 4 + size;
+        }
+    }
+
+    private int findEnd() throws IOException {
+        int min = Math.max(0, buffer.limit() - END_HEADER - 0xFFFF);
+
+        for (int pos = buffer.limit() - END_HEADER; pos >= min; pos--) {
+            if (buffer.getInt(pos) == END_SIG && pos + END_HEADER + u16(pos + 20) <= buffer.limit()) {
+                return pos;
+            }
+        }
+
+        throw new IOException("Not a zip file: " + path);
+    }
+
+    private int checkedOffset(long value) throws IOException {
+        if (value < 0 || value > buffer.limit()) {
+            throw new IOException("Invalid offset " + value + " in " + path);
+        }
+
+        return (int) value;
+    }
+
+    private int checkedSize(long value) throws IOException {
+        if (value < 0 || value > Integer.MAX_VALUE - 8) {
+            throw new IOException("Invalid entry size " + value + " in " + path);
+        }
+
+        return (int) value;
+    }
+
+    private int u16(int pos) {
+        return buffer.getShort(pos) & 0xFFFF;
+    }
+
+    private long u32(int pos) {
+        return buffer.getInt(pos) & 0xFFFFFFFFL;
+    }
+
+    private long u64(int pos) {
+        return buffer.getLong(pos);
+    }
+
+    @Override
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    @Override
+    public Entry getEntry(String name) {
+        return entriesByName.get(name);
+    }
+
+    /**
+     * Ends the pooled inflaters. Reads still inflating end theirs when they finish; deflated entries cannot be read
+     * afterwards.
+     */
+    @Override
+    public void close() {
+        synchronized (inflaters) {
+            closed = true;
+
+            for (Inflater inflater : inflaters) {
+                inflater.end();
+            }
+
+            inflaters.clear();
+        }
+    }
+
+    private Inflater takeInflater() {
+        synchronized (inflaters) {
+            if (closed) {
+                throw new IllegalStateException(path + " is already closed");
+            }
+
+            Inflater inflater = inflaters.poll();
+            return inflater != null ? inflater : new Inflater(true);
+        }
+    }
+
+    private void returnInflater(Inflater inflater) {
+        synchronized (inflaters) {
+            if (closed) {
+                inflater.end();
+            } else {
+                inflater.reset();
+                inflaters.push(inflater);
+            }
+        }
+    }
+
+    private static FileTime fromDosTime(int dosTime) {
+        // Out of range fields roll over instead of failing, like java.util.zip does.
+        LocalDateTime time = LocalDateTime.of(((dosTime >> 25) & 0x7f) + 1980, 1, 1, 0, 0)
+                .plusMonths(((dosTime >> 21) & 0x0f) - 1)
+                .plusDays(((dosTime >> 16) & 0x1f) - 1)
+                .plusHours((dosTime >> 11) & 0x1f)
+                .plusMinutes((dosTime >> 5) & 0x3f)
+                .plusSeconds((dosTime << 1) & 0x3e);
+        return FileTime.from(time.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    private class ZipEntry implements Entry {
+        private final String name;
+        private final int method;
+        private final int compressedSize;
+        private final int size;
+        private final int localOffset;
+        private final int dosTime;
+        private final long[] times;
+        private boolean extendedTime;
+
+        ZipEntry(String name, int method, int compressedSize, int size, int localOffset, int dosTime, long[] times, boolean extendedTime) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localOffset = localOffset;
+            this.dosTime = dosTime;
+            this.times = times;
+            this.extendedTime = extendedTime;
+        }
+
+        private synchronized long getTime(int index) {
+            if (extendedTime && index != MODIFIED) {
+                readLocalTimes();
+                extendedTime = false;
+            }
+
+            return times[index];
+        }
+
+        private void readLocalTimes() {
+            if (buffer.getInt(localOffset) != LOC_SIG) {
+                return;
+            }
+
+            int extra = localOffset + LOC_HEADER + u16(localOffset + 26);
+            int extraEnd = extra + u16(localOffset + 28);
+            while (extra + 4 <= extraEnd) {
+                int id = u16(extra);
+                int length = u16(extra + 2);
+                int data = extra + 4;
+
+                if (id == EXTID_EXTT && length >= 1) {
+                    int flags = buffer.get(data);
+                    int field = data + 1;
+                    for (int i = 0; i < 3; i++) {
+                        if ((flags & (1 << i)) != 0 && field + 4 <= data + length) {
+                            times[i] = u32(field) * 1000L;
+                            field += 4;
+                        }
+                    }
+                }
+
+                extra = data + length;
+            }
+        }
+
+        private FileTime toFileTime(long millis) {
+            return millis != -1 ? FileTime.fromMillis(millis) : getLastModifiedTime();
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public FileTime getLastModifiedTime() {
+            long millis = getTime(MODIFIED);
+            return millis != -1 ? FileTime.fromMillis(millis) : fromDosTime(dosTime);
+        }
+
+        @Override
+        public FileTime getLastAccessTime() {
+            return toFileTime(getTime(ACCESSED));
+        }
+
+        @Override
+        public FileTime getCreationTime() {
+            return toFileTime(getTime(CREATED));
+        }
+
+        @Override
+        public byte[] read() throws IOException {
+            if (buffer.getInt(localOffset) != LOC_SIG) {
+                throw new IOException("Invalid local header for " + name + " in " + path);
+            }
+
+            int dataStart = localOffset + LOC_HEADER + u16(localOffset + 26) + u16(localOffset + 28);
+            if (dataStart + compressedSize > buffer.limit()) {
+                throw new IOException("Truncated entry " + name + " in " + path);
+            }
+
+            ByteBuffer data = buffer.slice(dataStart, compressedSize);
+            byte[] output = new byte[size];
+
+            switch (method) {
+                case STORED:
+                    if (compressedSize != size) {
+                        throw new IOException("Size mismatch for stored entry " + name + " in " + path);
+                    }
+
+                    data.get(output);
+                    return output;
+                case DEFLATED:
+                    inflate(data, output);
+                    return output;
+                default:
+                    throw new IOException("Unsupported compression method " + method + " for " + name + " in " + path);
+            }
+        }
+
+        private void inflate(ByteBuffer data, byte[] output) throws IOException {
+            Inflater inflater = takeInflater();
+            int offset = 0;
+
+            try {
+                inflater.setInput(data);
+                boolean paddingSupplied = false;
+
+                while (offset < output.length) {
+                    int length = inflater.inflate(output, offset, output.length - offset);
+                    offset += length;
+
+                    if (length == 0) {
+                        if (inflater.finished() || inflater.needsDictionary()) {
+                            break;
+                        } else if (inflater.needsInput()) {
+                            // nowrap inflaters may ask for one byte past the end of the deflate stream
+                            if (paddingSupplied) {
+                                break;
+                            }
+
+                            inflater.setInput(new byte[1]);
+                            paddingSupplied = true;
+                        }
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt entry " + name + " in " + path, e);
+            } finally {
+                returnInflater(inflater);
+            }
+
+            if (offset != output.length) {
+                throw new IOException("Truncated entry " + name + " in " + path);
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import net.fabricmc.stitch.representation.JarReader;
+import net.fabricmc.stitch.representation.JarRootEntry;
+
+public class TestConflictFile {
+	private static final String OLD_MAPPINGS = "v1\tofficial\tintermediary\n"
+					+ "CLASS\ta\tnet/minecraft/class_1\n"
+					+ "CLASS\tb\tnet/minecraft/class_2\n"
+					+ "CLASS\tc\tnet/minecraft/class_3\n"
+					+ "METHOD\ta\t()V\tm\tmethod_1\n"
+					+ "METHOD\tc\t()V\tm\tmethod_3\n";
+
+	private static final String MATCHES = "c\tLa;\tLa;\n"
+					+ "\tm\tm()V\tm()V\n"
+					+ "c\tLb;\tLb;\n"
+					+ "c\tLc;\tLc;\n"
+					+ "\tm\tm()V\tm()V\n";
+
+	private static byte[] newClass(int access, String name, String superName, String... interfaces) {
+		ClassWriter writer = new ClassWriter(0);
+		writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | access, name, null, superName, interfaces);
+		writer.visitMethod(Opcodes.ACC_PUBLIC | (access & Opcodes.ACC_ABSTRACT), "m", "()V", null, null).visitEnd();
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	private static JarRootEntry read(Path dir, String name, Map<String, byte[]> classes) throws IOException {
+		Path jar = dir.resolve(name + ".jar");
+		try (OutputStream out = Files.newOutputStream(jar); ZipOutputStream zip = new ZipOutputStream(out)) {
+			for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+				zip.putNextEntry(new ZipEntry(entry.getKey() + ".class"));
+				zip.write(entry.getValue());
+				zip.closeEntry();
+			}
+		}
+
+		JarRootEntry root = new JarRootEntry(jar.toFile());
+		new JarReader(root, Files.createDirectories(dir.resolve("libraries")).toFile()).apply();
+		return root;
+	}
+
+	private static final class Setup {
+		final Path dir;
+		final JarRootEntry jarOld;
+		final JarRootEntry jarNew;
+
+		Setup() throws IOException {
+			dir = Files.createTempDirectory("stitch-conflicts");
+			Files.write(dir.resolve("old.tiny"), OLD_MAPPINGS.getBytes(StandardCharsets.UTF_8));
+			Files.write(dir.resolve("matches.match"), MATCHES.getBytes(StandardCharsets.UTF_8));
+
+			// a, b and c are unrelated in the old jar; in the new one b extends a and implements c, so a.m and c.m
+			// join into one family whose old names differ
+			Map<String, byte[]> oldClasses = new LinkedHashMap<>();
+			oldClasses.put("a", newClass(0, "a", "java/lang/Object"));
+			oldClasses.put("b", newClass(0, "b", "java/lang/Object"));
+			oldClasses.put("c", newClass(Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, "c", "java/lang/Object"));
+			jarOld = read(dir, "old", oldClasses);
+
+			// c comes first, so the family's entry is c.m even though generation reaches a.m first
+			Map<String, byte[]> newClasses = new LinkedHashMap<>();
+			newClasses.put("c", newClass(Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, "c", "java/lang/Object"));
+			newClasses.put("a", newClass(0, "a", "java/lang/Object"));
+			newClasses.put("b", newClass(0, "b", "a", "c"));
+			jarNew = read(dir, "new", newClasses);
+		}
+
+		GenState newState() throws IOException {
+			GenState state = new GenState();
+			state.disableInteractive();
+			state.prepareUpdate(dir.resolve("old.tiny").toFile(), dir.resolve("matches.match").toFile());
+			return state;
+		}
+
+		File file(String name) {
+			return dir.resolve(name).toFile();
+		}
+	}
+
+	private static List<String> lines(File file) throws IOException {
+		return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+	}
+
+	private static void writeChoice(File report, File choices, String name) throws IOException {
+		List<String> lines = new ArrayList<>();
+		for (String line : lines(report)) {
+			lines.add(line.endsWith("\t") ? line + name : line);
+		}
+		Files.write(choices.toPath(), lines, StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void reportedConflictsResolveThroughTheConflictFile() throws IOException {
+		Setup setup = new Setup();
+
+		File report = setup.file("conflicts.txt");
+		Assertions.assertEquals(1, setup.newState().reportConflicts(setup.file("report.tiny"), report, setup.jarNew, setup.jarOld));
+		List<String> reported = lines(report);
+		Assertions.assertTrue(reported.contains("c.m()V\t"), reported.toString());
+		Assertions.assertTrue(reported.contains("#   method_1 <- a.m()V"), reported.toString());
+		Assertions.assertTrue(reported.contains("#   method_3 <- c(itf).m()V"), reported.toString());
+
+		File choices = setup.file("choices.txt");
+		writeChoice(report, choices, "method_3");
+		GenState state = setup.newState();
+		state.setConflictFile(choices);
+		File output = setup.file("new.tiny");
+		state.generate(output, setup.jarNew, setup.jarOld);
+
+		List<String> mappings = lines(output);
+		Assertions.assertTrue(mappings.contains("METHOD\ta\t()V\tm\tmethod_3"), mappings.toString());
+		Assertions.assertTrue(mappings.contains("METHOD\tc\t()V\tm\tmethod_3"), mappings.toString());
+	}
+
+	@Test
+	public void rejectsChoicesThatAreNotCandidates() throws IOException {
+		Setup setup = new Setup();
+
+		File report = setup.file("conflicts.txt");
+		setup.newState().reportConflicts(setup.file("report.tiny"), report, setup.jarNew, setup.jarOld);
+		File choices = setup.file("choices.txt");
+		writeChoice(report, choices, "method_2");
+
+		GenState state = setup.newState();
+		state.setConflictFile(choices);
+		RuntimeException e = Assertions.assertThrows(RuntimeException.class, () -> state.generate(setup.file("new.tiny"), setup.jarNew, setup.jarOld));
+		Assertions.assertTrue(e.getMessage().contains("method_2 for c.m()V is not one of [method_1, method_3]"), e.getMessage());
+	}
+
+	@Test
+	public void rejectsDuplicateChoices() throws IOException {
+		Path dir = Files.createTempDirectory("stitch-conflicts");
+		File choices = dir.resolve("choices.txt").toFile();
+		Files.write(choices.toPath(), List.of("# comment", "c.m()V\tmethod_1", "c.m()V\tmethod_3"), StandardCharsets.UTF_8);
+
+		IOException e = Assertions.assertThrows(IOException.class, () -> new GenState().setConflictFile(choices));
+		Assertions.assertTrue(e.getMessage().contains("Duplicate conflict choice for c.m()V"), e.getMessage());
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.commands;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestNamePatternSet {
+	private static final List<String> PATTERNS = Arrays.asList(
+			"^(a/B|a/C/.*)$",
+			"a/B",
+			"^a/B$",
+			"(?:a/B|c/.*)",
+			"^(?:a/B)$",
+			"a\\.b/.*",
+			"a\\$b/c",
+			"\\(a\\)|a\\|b",
+			"\\Qa.b\\E",
+			"(a/.*|b)",
+			"a/.*|b/c/.*",
+			"a/.*b",
+			"(a)|(b)",
+			".*",
+			"a|.*",
+			"x(?:y|z)",
+			"net/minecraft/.*",
+			"",
+			"^$",
+			"a\\d",
+			"a\\n.*");
+
+	private static final List<String> NAMES = Arrays.asList(
+			"", "a", "b", "a/B", "a/Bx", "a/C", "a/C/", "a/C/x", "a/C/x\n", "a/C/ ", "a/C\n/x",
+			"a.b", "a.b/x", "aXb/x", "a$b/c", "(a)", "a|b", "b/c/d", "c/", "c/x\ny", "c/x\r", "c/x\u0085",
+			"xy", "xz", "x/y", "a1", "a\nb", "net/minecraft/Foo", "net/minecraft/Foo\r", "net/minecraft/Foo/bar()V");
+
+	private static void assertSameAnswers(List<Pattern> patterns, List<String> names) {
+		NamePatternSet set = new NamePatternSet();
+		for (Pattern pattern : patterns) {
+			set.add(pattern);
+		}
+
+		for (String name : names) {
+			boolean expected = false;
+			for (Pattern pattern : patterns) {
+				expected |= pattern.matcher(name).matches();
+			}
+
+			Assertions.assertEquals(expected, set.matches(name), patterns + " on " + escape(name));
+
+			int slash = name.indexOf('/');
+			if (slash >= 0) {
+				String owner = name.substring(0, slash);
+				String key = name.substring(slash + 1);
+				Assertions.assertEquals(expected, set.matchesMember(owner, key), patterns + " on member " + escape(name));
+			}
+		}
+	}
+
+	private static String escape(String s) {
+		StringBuilder builder = new StringBuilder("\"");
+		for (char c : s.toCharArray()) {
+			if (c < 0x20 || c > 0x7e) {
+				builder.append(String.format("\\u%04x", (int) c));
+			} else {
+				builder.append(c);
+			}
+		}
+		return builder.append('"').toString();
+	}
+
+	@Test
+	public void matchesLikeTheRegexForEachPattern() {
+		for (String pattern : PATTERNS) {
+			assertSameAnswers(List.of(Pattern.compile(pattern)), NAMES);
+		}
+	}
+
+	@Test
+	public void matchesLikeTheRegexForAllPatternsTogether() {
+		List<Pattern> patterns = new ArrayList<>();
+		for (String pattern : PATTERNS) {
+			patterns.add(Pattern.compile(pattern));
+			assertSameAnswers(patterns, NAMES);
+		}
+	}
+
+	@Test
+	public void answersLiteralPatternsWithoutTheRegex() {
+		Assertions.assertEquals(List.of("a/B", "a/C/\0*"), NamePatternSet.splitLiteralAlternatives("^(a/B|a/C/.*)$"));
+		Assertions.assertEquals(List.of("a/B", "c/\0*"), NamePatternSet.splitLiteralAlternatives("(?:a/B|c/.*)"));
+		Assertions.assertEquals(List.of("a.b/\0*"), NamePatternSet.splitLiteralAlternatives("a\\.b/.*"));
+		Assertions.assertEquals(List.of("(a)", "a|b"), NamePatternSet.splitLiteralAlternatives("\\(a\\)|a\\|b"));
+		Assertions.assertNull(NamePatternSet.splitLiteralAlternatives("\\Qa.b\\E"));
+		Assertions.assertNull(NamePatternSet.splitLiteralAlternatives("a/.*b"));
+		Assertions.assertNull(NamePatternSet.splitLiteralAlternatives("(a)|(b)"));
+		Assertions.assertNull(NamePatternSet.splitLiteralAlternatives("a\\d"));
+	}
+
+	@Test
+	public void matchesLikeTheRegexForRandomPatterns() {
+		String[] patternParts = { "a", "b", "/", "\\.", "\\$", "\\/", ".", ".*", "|", "(", ")", "(?:", "^", "$", "\\Q.|\\E", "\\n", "\\\\" };
+		String[] nameParts = { "a", "b", "/", ".", "$", "|", "\\", "\n", "\r", " " };
+		Random random = new Random(19);
+
+		for (int round = 0; round < 2000; round++) {
+			List<Pattern> patterns = new ArrayList<>();
+			for (int count = 1 + random.nextInt(3); patterns.size() < count; ) {
+				StringBuilder pattern = new StringBuilder();
+				for (int i = random.nextInt(8); i >= 0; i--) {
+					pattern.append(patternParts[random.nextInt(patternParts.length)]);
+				}
+
+				try {
+					patterns.add(Pattern.compile(pattern.toString()));
+				} catch (PatternSyntaxException e) {
+					// unbalanced groups and the like; draw another one
+				}
+			}
+
+			List<String> names = new ArrayList<>();
+			for (int n = 0; n < 30; n++) {
+				StringBuilder name = new StringBuilder();
+				for (int i = random.nextInt(6); i > 0; i--) {
+					name.append(nameParts[random.nextInt(nameParts.length)]);
+				}
+				names.add(name.toString());
+			}
+
+			// names close to the patterns' own text, so that a fair share of them match
+			for (Pattern pattern : patterns) {
+				for (String alternative : pattern.pattern().split("\\|")) {
+					String literal = alternative.replaceAll("[\\\\^$()?:*]|\\\\[QE]", "");
+					names.add(literal);
+					names.add(literal + nameParts[random.nextInt(nameParts.length)]);
+				}
+			}
+
+			assertSameAnswers(patterns, names);
+		}
+	}
+}
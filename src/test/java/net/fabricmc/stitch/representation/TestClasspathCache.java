@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.fabricmc.stitch.representation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+import net.fabricmc.stitch.util.ClassSource;
+
+public class TestClasspathCache {
+	private static Path writeLibrary(Path dir, int count) throws IOException {
+		Map<String, byte[]> classes = new LinkedHashMap<>();
+		for (int i = 0; i < count; i++) {
+			classes.put("lib/C" + i, TestJarReader.newClass(Opcodes.ACC_PUBLIC, "lib/C" + i, "java/lang/Object", null));
+		}
+		return TestJarReader.writeJar(dir.resolve("lib.jar"), classes);
+	}
+
+	private static void summarize(Path cacheDir, Path jar, int from, int to) throws IOException {
+		ClasspathCache cache = new ClasspathCache(cacheDir);
+		ClasspathCache.Table table = cache.open(jar.toFile());
+		try (ClassSource source = ClassSource.open(jar)) {
+			for (int i = from; i < to; i++) {
+				table.get("lib/C" + i, source.getEntry("lib/C" + i + ".class"));
+			}
+		}
+		cache.save();
+	}
+
+	private static String getReport(Path cacheDir, Path jar, int count) throws IOException {
+		ClasspathCache cache = new ClasspathCache(cacheDir);
+		ClasspathCache.Table table = cache.open(jar.toFile());
+		try (ClassSource source = ClassSource.open(jar)) {
+			for (int i = 0; i < count; i++) {
+				Assertions.assertEquals("lib/C" + i, table.get("lib/C" + i, source.getEntry("lib/C" + i + ".class")).getName());
+			}
+		}
+		return cache.getReport();
+	}
+
+	@Test
+	public void keepsTheSummariesOfEarlierSaves() throws IOException {
+		Path dir = Files.createTempDirectory("stitch-classpath-cache");
+		Path jar = writeLibrary(dir, 4);
+		Path cacheDir = dir.resolve("cache");
+
+		// both open the table before either saves
+		ClasspathCache first = new ClasspathCache(cacheDir);
+		ClasspathCache.Table firstTable = first.open(jar.toFile());
+		ClasspathCache second = new ClasspathCache(cacheDir);
+		ClasspathCache.Table secondTable = second.open(jar.toFile());
+
+		try (ClassSource source = ClassSource.open(jar)) {
+			firstTable.get("lib/C0", source.getEntry("lib/C0.class"));
+			firstTable.get("lib/C1", source.getEntry("lib/C1.class"));
+			secondTable.get("lib/C2", source.getEntry("lib/C2.class"));
+			secondTable.get("lib/C3", source.getEntry("lib/C3.class"));
+		}
+		first.save();
+		second.save();
+
+		Assertions.assertEquals("Classpath cache: 4 hits, 0 misses over 1 jars", getReport(cacheDir, jar, 4));
+	}
+
+	@Test
+	public void mergesConcurrentSaves() throws Exception {
+		Path dir = Files.createTempDirectory("stitch-classpath-cache");
+		int writers = 8;
+		int perWriter = 16;
+		Path jar = writeLibrary(dir, writers * perWriter);
+		Path cacheDir = dir.resolve("cache");
+
+		List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+		List<Thread> threads = new ArrayList<>();
+		for (int w = 0; w < writers; w++) {
+			int from = w * perWriter;
+			Thread thread = new Thread(() -> {
+				try {
+					summarize(cacheDir, jar, from, from + perWriter);
+				} catch (Throwable e) {
+					failures.add(e);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		Assertions.assertEquals(Collections.emptyList(), failures);
+		Assertions.assertEquals("Classpath cache: " + writers * perWriter + " hits, 0 misses over 1 jars", getReport(cacheDir, jar, writers * perWriter));
+	}
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.representation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import net.fabricmc.stitch.util.StitchUtil;
+
+public class TestJarReader {
+	private static final int PUBLIC = Opcodes.ACC_PUBLIC;
+	private static final int PRIVATE = Opcodes.ACC_PRIVATE;
+	private static final int STATIC = Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC;
+
+	/**
+	 * Builds a class with empty methods, given as name/descriptor/access triples. Each method gets a generic signature
+	 * naming its class, so joined entries can be told apart by the declaration they kept.
+	 */
+	static byte[] newClass(int access, String name, String superName, String[] interfaces, Object... methods) {
+		ClassWriter writer = new ClassWriter(0);
+		writer.visit(Opcodes.V17, access, name, null, superName, interfaces);
+
+		for (int i = 0; i < methods.length; i += 3) {
+			int methodAccess = (Integer) methods[i + 2];
+			String desc = (String) methods[i + 1];
+			String signature = "<T" + name.replace('/', '_') + ":Ljava/lang/Object;>" + desc;
+			MethodVisitor method = writer.visitMethod(methodAccess, (String) methods[i], desc, signature, null);
+			if ((methodAccess & Opcodes.ACC_ABSTRACT) == 0) {
+				method.visitCode();
+				method.visitInsn(Opcodes.RETURN);
+				method.visitMaxs(0, (methodAccess & Opcodes.ACC_STATIC) != 0 ? 0 : 1);
+			}
+			method.visitEnd();
+		}
+
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	static Path writeJar(Path file, Map<String, byte[]> classes) throws IOException {
+		try (OutputStream out = Files.newOutputStream(file); ZipOutputStream zip = new ZipOutputStream(out)) {
+			for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+				zip.putNextEntry(new ZipEntry(entry.getKey() + ".class"));
+				zip.write(entry.getValue());
+				zip.closeEntry();
+			}
+		}
+
+		return file;
+	}
+
+	static JarRootEntry read(Path jar, Path classpath) throws IOException {
+		JarRootEntry root = new JarRootEntry(jar.toFile());
+		new JarReader(root, classpath.toFile()).apply();
+		return root;
+	}
+
+	@Test
+	public void skipsClasspathFilesThatAreNotArchives() throws IOException {
+		Path dir = Files.createTempDirectory("stitch-jar-reader");
+		Path classpath = Files.createDirectory(dir.resolve("libraries"));
+
+		Map<String, byte[]> library = new LinkedHashMap<>();
+		library.put("lib/Base", newClass(Opcodes.ACC_PUBLIC, "lib/Base", "java/lang/Object", null, "m", "()V", Opcodes.ACC_PUBLIC));
+		writeJar(classpath.resolve("lib.jar"), library);
+		Files.write(classpath.resolve("README"), "not a jar".getBytes(StandardCharsets.UTF_8));
+		Files.write(classpath.resolve("lib.jar.sha1"), "0123456789abcdef".getBytes(StandardCharsets.UTF_8));
+		Files.write(classpath.resolve("broken.jar"), "not a zip either".getBytes(StandardCharsets.UTF_8));
+
+		Map<String, byte[]> classes = new LinkedHashMap<>();
+		classes.put("a", newClass(Opcodes.ACC_PUBLIC, "a", "lib/Base", null, "m", "()V", Opcodes.ACC_PUBLIC, "b", "()V", Opcodes.ACC_PUBLIC));
+		JarRootEntry root = read(writeJar(dir.resolve("input.jar"), classes), classpath);
+
+		// the library method still reaches the jar, so the override keeps its name
+		JarClassEntry a = root.getClass("a", false);
+		Assertions.assertTrue(a.getMethod("m()V").isAbsolutelyNonObfuscated());
+		Assertions.assertFalse(a.getMethod("b()V").isAbsolutelyNonObfuscated());
+	}
+
+	/**
+	 * Stage 3 as it was before override groups: one walk per method, visiting propagation trees in class order.
+	 */
+	private static void joinPerMethod(JarRootEntry jar, ClassStorage classpath) {
+		// no hierarchy index, so the walks go through JarMethodEntry itself
+		ClassStorage storage = classpath::getClass;
+		Set<JarClassEntry> traversedClasses = StitchUtil.newIdentityHashSet();
+		Collection<JarMethodEntry> checkedMethods = StitchUtil.newIdentityHashSet();
+
+		for (JarClassEntry entry : jar.getAllClasses()) {
+			if (traversedClasses.contains(entry)) {
+				continue;
+			}
+
+			ClassPropagationTree tree = new ClassPropagationTree(storage, entry);
+			if (tree.getClasses().size() == 1) {
+				traversedClasses.add(entry);
+				continue;
+			}
+
+			for (JarClassEntry c : tree.getClasses()) {
+				for (JarMethodEntry m : c.getMethods()) {
+					if (!checkedMethods.add(m)) {
+						continue;
+					}
+
+					List<JarClassEntry> mList = m.getMatchingEntries(storage, c, true);
+					if (mList.size() > 1) {
+						boolean hasNonObfuscated = false;
+						for (JarClassEntry key : mList) {
+							hasNonObfuscated |= key.getMethod(m.getKey()).isNonObfuscated;
+						}
+
+						for (JarClassEntry key : mList) {
+							JarMethodEntry value = key.getMethod(m.getKey());
+							if (hasNonObfuscated) {
+								value.isNonObfuscated = true;
+							} else if (value != m) {
+								key.methods.put(m.getKey(), m);
+								if (m.recordComponent == null) {
+									m.recordComponent = value.recordComponent;
+								}
+							}
+						}
+					}
+				}
+			}
+
+			traversedClasses.addAll(tree.getClasses());
+		}
+	}
+
+	private static String describe(JarRootEntry jar) {
+		StringBuilder builder = new StringBuilder();
+		for (JarClassEntry c : jar.getAllClasses()) {
+			for (JarMethodEntry m : c.getMethods()) {
+				builder.append(c.getFullyQualifiedName()).append('.').append(m.getKey())
+						.append(" -> ").append(m.getSignature())
+						.append(m.isAbsolutelyNonObfuscated() ? " non-obfuscated" : "")
+						.append('\n');
+			}
+		}
+		return builder.toString();
+	}
+
+	@Test
+	public void joinsLikeThePerMethodWalk() throws IOException {
+		Path dir = Files.createTempDirectory("stitch-jar-reader");
+		Path classpath = Files.createDirectory(dir.resolve("libraries"));
+
+		Map<String, byte[]> library = new LinkedHashMap<>();
+		library.put("lib/I", newClass(Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, "lib/I", "java/lang/Object", null,
+				"m", "()V", PUBLIC | Opcodes.ACC_ABSTRACT));
+		library.put("lib/Base", newClass(PUBLIC, "lib/Base", "java/lang/Object", null, "m2", "()V", PUBLIC));
+		writeJar(classpath.resolve("lib.jar"), library);
+
+		Map<String, byte[]> classes = new LinkedHashMap<>();
+		// a private declaration comes first in the jar, so the joined entry is the first public one after it
+		classes.put("i", newClass(PUBLIC, "i", "h", null, "q", "()V", PRIVATE));
+		classes.put("h", newClass(PUBLIC, "h", "java/lang/Object", null, "q", "()V", PUBLIC));
+		classes.put("j", newClass(PUBLIC, "j", "i", null, "q", "()V", PUBLIC));
+		classes.put("k", newClass(PUBLIC, "k", "h", null, "q", "()V", STATIC));
+		// the walk from a reaches b and d before c leads it to lib/I, so the private b.m is marked too
+		classes.put("a", newClass(PUBLIC, "a", "java/lang/Object", null, "m", "()V", PUBLIC, "s", "()V", STATIC, "p", "()V", PRIVATE));
+		classes.put("b", newClass(PUBLIC, "b", "a", null, "m", "()V", PRIVATE, "s", "()V", PUBLIC, "p", "()V", PUBLIC));
+		classes.put("c", newClass(PUBLIC, "c", "a", new String[] { "lib/I" }, "m", "()V", PUBLIC));
+		classes.put("d", newClass(PUBLIC, "d", "b", null, "m", "()V", PUBLIC, "p", "()V", PRIVATE));
+		// the walk from x stops at lib/Base before reaching its subclasses, so y.m2 and z.m2 stay obfuscated
+		classes.put("x", newClass(PUBLIC, "x", "lib/Base", null, "m2", "()V", PUBLIC));
+		classes.put("y", newClass(PUBLIC, "y", "x", null, "m2", "()V", PRIVATE));
+		classes.put("z", newClass(PUBLIC, "z", "x", null, "m2", "()V", STATIC));
+		Path jar = writeJar(dir.resolve("input.jar"), classes);
+
+		JarRootEntry joined = read(jar, classpath);
+
+		JarRootEntry expected = new JarRootEntry(jar.toFile());
+		JarReader reader = new JarReader(expected, classpath.toFile());
+		reader.setJoinMethodEntries(false);
+		reader.apply();
+		joinPerMethod(expected, reader.getClasspathStorage());
+
+		Assertions.assertEquals(describe(expected), describe(joined));
+		Assertions.assertTrue(joined.getClass("b", false).getMethod("m()V").isAbsolutelyNonObfuscated());
+		Assertions.assertFalse(joined.getClass("y", false).getMethod("m2()V").isAbsolutelyNonObfuscated());
+		Assertions.assertSame(joined.getClass("h", false).getMethod("q()V"), joined.getClass("i", false).getMethod("q()V"));
+	}
+
+	@Test
+	public void sharesMemberKeysAcrossClasses() throws IOException {
+		Path dir = Files.createTempDirectory("stitch-jar-reader");
+		Map<String, byte[]> classes = new LinkedHashMap<>();
+		classes.put("a", newClass(PUBLIC, "a", "java/lang/Object", null, "run", "()V", PUBLIC));
+		classes.put("b", newClass(PUBLIC, "b", "java/lang/Object", null, "run", "()V", PUBLIC));
+		JarRootEntry root = read(writeJar(dir.resolve("input.jar"), classes), Files.createDirectory(dir.resolve("libraries")));
+
+		Assertions.assertSame(root.getClass("a", false).getMethod("run()V").getKey(), root.getClass("b", false).getMethod("run()V").getKey());
+	}
+
+	private static String readIncrementally(Path jar, Path classpath, Path cache) throws IOException {
+		JarReader reader = new JarReader(new JarRootEntry(jar.toFile()), classpath.toFile());
+		reader.setModelCache(cache);
+		// fails if the model differs from a run without the cache
+		reader.setVerifyIncremental(true);
+
+		PrintStream err = System.err;
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(log, true, "UTF-8"));
+		try {
+			reader.apply();
+		} finally {
+			System.setErr(err);
+		}
+
+		return log.toString("UTF-8");
+	}
+
+	@Test
+	public void reusesUnchangedClassesOfThePreviousJar() throws IOException {
+		Path dir = Files.createTempDirectory("stitch-jar-reader");
+		Path classpath = Files.createDirectory(dir.resolve("libraries"));
+		Path cache = dir.resolve("cache");
+
+		Map<String, byte[]> classes = new LinkedHashMap<>();
+		classes.put("a", newClass(PUBLIC, "a", "java/lang/Object", null, "m", "()V", PUBLIC, "toString", "()Ljava/lang/String;", PUBLIC));
+		classes.put("b", newClass(PUBLIC, "b", "a", null, "m", "()V", PUBLIC));
+		classes.put("c", newClass(PUBLIC, "c", "b", null, "m", "()V", PUBLIC, "n", "()V", PRIVATE));
+		classes.put("d", newClass(PUBLIC, "d", "java/lang/Object", null, "s", "()V", STATIC));
+		Assertions.assertFalse(readIncrementally(writeJar(dir.resolve("v1.jar"), classes), classpath, cache).contains("Reused"));
+
+		// b now overrides toString, which changes the families of its subclass too
+		classes.put("b", newClass(PUBLIC, "b", "a", null, "m", "()V", PUBLIC, "toString", "()Ljava/lang/String;", PUBLIC));
+		classes.remove("d");
+		classes.put("e", newClass(PUBLIC, "e", "c", null, "n", "()V", PUBLIC));
+		String log = readIncrementally(writeJar(dir.resolve("v2.jar"), classes), classpath, cache);
+
+		Assertions.assertTrue(log.contains("Reused 2 of 4 parsed classes, visited 2."), log);
+		Assertions.assertTrue(log.contains("Cached model matches a full run."), log);
+	}
+
+	@Test
+	public void refusesClasspathLookupsAfterApply() throws IOException {
+		Path dir = Files.createTempDirectory("stitch-jar-reader");
+		Path classpath = Files.createDirectory(dir.resolve("libraries"));
+
+		Map<String, byte[]> library = new LinkedHashMap<>();
+		library.put("lib/Base", newClass(PUBLIC, "lib/Base", "java/lang/Object", null));
+		library.put("lib/Unused", newClass(PUBLIC, "lib/Unused", "java/lang/Object", null));
+		writeJar(classpath.resolve("lib.jar"), library);
+
+		Map<String, byte[]> classes = new LinkedHashMap<>();
+		classes.put("a", newClass(PUBLIC, "a", "lib/Base", null));
+		JarReader reader = new JarReader(new JarRootEntry(writeJar(dir.resolve("input.jar"), classes).toFile()), classpath.toFile());
+		reader.apply();
+
+		// the archives are closed by now, so only what was loaded before is left
+		Assertions.assertNotNull(reader.getClasspathStorage().getClass("lib/Base", false));
+		Assertions.assertThrows(IllegalStateException.class, () -> reader.getClasspathStorage().getClass("lib/Unused", false));
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.representation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.commons.Remapper;
+
+public class TestJarRootEntry {
+	@Test
+	public void splitsNamesLikeStringSplit() {
+		String[] names = { "", "a", "a/B", "a$", "a$$", "a$b", "a$b$", "a$$b", "a$$b$$", "$a", "$a$", "$$a", "a$b$c", "a$1$2", "$", "$$" };
+
+		for (String name : names) {
+			Assertions.assertEquals(Arrays.asList(name.split("\\$")), Arrays.asList(JarRootEntry.splitName(name)), name);
+		}
+	}
+
+	@Test
+	public void findsClassesByName() {
+		JarRootEntry root = new JarRootEntry();
+		JarClassEntry outer = root.getClass("a/Outer", true);
+		JarClassEntry inner = root.getClass("a/Outer$Inner", true);
+		JarClassEntry empty = root.getClass("a/Outer$$Synthetic", true);
+
+		Assertions.assertSame(outer, root.getClass("a/Outer", false));
+		Assertions.assertSame(inner, root.getClass("a/Outer$Inner", false));
+		Assertions.assertSame(inner, outer.getInnerClass("Inner"));
+		Assertions.assertSame(empty, root.getClass("a/Outer$$Synthetic", false));
+		// "$$" is an inner class with an empty name in between
+		Assertions.assertSame(empty, outer.getInnerClass("").getInnerClass("Synthetic"));
+		Assertions.assertSame(root.getClass("a/Outer$", false), outer.getInnerClass(""));
+
+		// trailing '$' are dropped, as split() does
+		Assertions.assertSame(inner, root.getClass("a/Outer$Inner$", false));
+		Assertions.assertSame(inner, root.getClass("a/Outer$Inner$$", false));
+		Assertions.assertNull(root.getClass("a/Outer$Missing", false));
+		Assertions.assertNull(root.getClass("a/Missing$", false));
+
+		Assertions.assertEquals(List.of(outer, inner, outer.getInnerClass(""), empty), new ArrayList<>(root.getAllClasses()));
+	}
+
+	@Test
+	public void reindexesRenamedClasses() {
+		JarRootEntry root = new JarRootEntry();
+		JarClassEntry outer = root.getClass("a", true);
+		JarClassEntry inner = root.getClass("a$b", true);
+		JarClassEntry other = root.getClass("c", true);
+		for (JarClassEntry c : root.getAllClasses()) {
+			c.populate(0, null, "java/lang/Object", new String[0], false);
+		}
+
+		Map<String, String> mapping = new HashMap<>();
+		mapping.put("a", "x/Outer");
+		mapping.put("a$b", "x/Outer$Inner");
+		Remapper remapper = new Remapper() {
+			@Override
+			public String map(String name) {
+				return mapping.getOrDefault(name, name);
+			}
+		};
+
+		// what JarReader does when remapping
+		Map<String, JarClassEntry> classTree = new HashMap<>(root.classTree);
+		root.classTree.clear();
+		for (JarClassEntry c : classTree.values()) {
+			c.remap(remapper);
+			root.classTree.put(c.getKey(), c);
+		}
+		root.reindex();
+
+		Assertions.assertSame(outer, root.getClass("x/Outer", false));
+		Assertions.assertSame(inner, root.getClass("x/Outer$Inner", false));
+		Assertions.assertSame(inner, root.getClass("x/Outer$Inner$", false));
+		Assertions.assertSame(other, root.getClass("c", false));
+		Assertions.assertNull(root.getClass("a", false));
+		Assertions.assertNull(root.getClass("a$b", false));
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.fabricmc.stitch.representation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestJdkIndex {
+	@Test
+	public void generatesOnceForConcurrentReaders() throws Exception {
+		Path dir = Files.createTempDirectory("stitch-jdk-index");
+
+		PrintStream err = System.err;
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(log, true, "UTF-8"));
+
+		List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+		List<Path> files = Collections.synchronizedList(new ArrayList<>());
+		try {
+			List<Thread> threads = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				Thread thread = new Thread(() -> {
+					try {
+						files.add(JdkIndex.getOrGenerate(dir));
+					} catch (Throwable e) {
+						failures.add(e);
+					}
+				});
+				threads.add(thread);
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} finally {
+			System.setErr(err);
+		}
+
+		Assertions.assertEquals(Collections.emptyList(), failures);
+		Assertions.assertEquals(4, files.size());
+		Assertions.assertEquals(1, log.toString("UTF-8").split("Generating JDK index", -1).length - 1, log.toString("UTF-8"));
+		Assertions.assertNotNull(JdkIndex.load(files.get(0)).get("java/lang/Object"));
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.representation;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestMemberTable {
+	private static void assertSameContents(TreeMap<String, Integer> expected, MemberTable<Integer> table) {
+		Assertions.assertEquals(expected.size(), table.size());
+		Assertions.assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(table.keySet()));
+		Assertions.assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(table.values()));
+		Assertions.assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(table.entrySet()));
+		Assertions.assertEquals(expected, table);
+	}
+
+	@Test
+	public void keepsKeysSortedOnInsert() {
+		MemberTable<Integer> table = new MemberTable<>();
+		TreeMap<String, Integer> expected = new TreeMap<>();
+		String[] keys = { "m()V", "a(I)V", "z()V", "<init>()V", "b()V", "a()V", "m()V" };
+
+		for (int i = 0; i < keys.length; i++) {
+			Assertions.assertEquals(expected.put(keys[i], i), table.put(keys[i], i));
+			assertSameContents(expected, table);
+		}
+
+		Assertions.assertEquals(List.of("<init>()V", "a()V", "a(I)V", "b()V", "m()V", "z()V"), new ArrayList<>(table.keySet()));
+		Assertions.assertEquals(6, table.get("m()V"));
+	}
+
+	@Test
+	public void looksUpPresentAndMissingKeys() {
+		MemberTable<Integer> table = new MemberTable<>();
+		Assertions.assertNull(table.get("a()V"));
+		Assertions.assertFalse(table.containsKey("a()V"));
+
+		table.put("b()V", 1);
+		table.put("d()V", 2);
+		Assertions.assertEquals(1, table.get("b()V"));
+		Assertions.assertTrue(table.containsKey("d()V"));
+		Assertions.assertTrue(table.keySet().contains("d()V"));
+		Assertions.assertNull(table.get("a()V"));
+		Assertions.assertNull(table.get("c()V"));
+		Assertions.assertNull(table.get("e()V"));
+		Assertions.assertNull(table.get(1));
+		Assertions.assertFalse(table.containsKey(null));
+	}
+
+	@Test
+	public void trimKeepsContents() {
+		MemberTable<Integer> table = new MemberTable<>();
+		TreeMap<String, Integer> expected = new TreeMap<>();
+		for (int i = 0; i < 10; i++) {
+			table.put("f" + i, i);
+			expected.put("f" + i, i);
+		}
+
+		table.trim();
+		assertSameContents(expected, table);
+
+		// growing again after a trim
+		table.put("g", 10);
+		expected.put("g", 10);
+		table.trim();
+		assertSameContents(expected, table);
+
+		for (int i = 0; i < 10; i++) {
+			Assertions.assertEquals(i, table.remove("f" + i));
+			expected.remove("f" + i);
+		}
+		table.trim();
+		assertSameContents(expected, table);
+
+		table.remove("g");
+		table.trim();
+		Assertions.assertTrue(table.isEmpty());
+		table.put("h", 11);
+		Assertions.assertEquals(11, table.get("h"));
+	}
+
+	@Test
+	public void behavesLikeATreeMap() {
+		Random random = new Random(11);
+		MemberTable<Integer> table = new MemberTable<>();
+		TreeMap<String, Integer> expected = new TreeMap<>();
+
+		for (int i = 0; i < 5000; i++) {
+			String key = "m" + random.nextInt(64) + "()V";
+			switch (random.nextInt(5)) {
+				case 0:
+					Assertions.assertEquals(expected.remove(key), table.remove(key));
+					break;
+				case 1:
+					table.trim();
+					break;
+				case 2:
+					Assertions.assertEquals(expected.get(key), table.get(key));
+					break;
+				default:
+					Assertions.assertEquals(expected.put(key, i), table.put(key, i));
+			}
+		}
+
+		assertSameContents(expected, table);
+		table.clear();
+		Assertions.assertEquals(0, table.size());
+		Assertions.assertFalse(table.values().iterator().hasNext());
+	}
+
+	@Test
+	public void failsIteratorsAfterStructuralChanges() {
+		MemberTable<Integer> table = new MemberTable<>();
+		table.put("a", 1);
+		table.put("b", 2);
+
+		Iterator<Map.Entry<String, Integer>> iterator = table.entrySet().iterator();
+		iterator.next();
+		table.put("c", 3);
+		Assertions.assertThrows(ConcurrentModificationException.class, iterator::next);
+
+		// replacing a value is not a structural change
+		Iterator<String> keys = table.keySet().iterator();
+		keys.next();
+		table.put("a", 4);
+		Assertions.assertEquals("b", keys.next());
+	}
+}
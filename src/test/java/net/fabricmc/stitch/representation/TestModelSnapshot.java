@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.fabricmc.stitch.representation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+
+public class TestModelSnapshot {
+	private static final int PUBLIC = Opcodes.ACC_PUBLIC;
+
+	private static Map<String, byte[]> classes() {
+		Map<String, byte[]> classes = new LinkedHashMap<>();
+		classes.put("a", TestJarReader.newClass(PUBLIC, "a", "lib/Base", null, "m", "()V", PUBLIC, "n", "()V", PUBLIC));
+		classes.put("b", TestJarReader.newClass(PUBLIC, "b", "a", new String[] { "c" }, "n", "()V", PUBLIC, "o", "()V", PUBLIC));
+		classes.put("c", TestJarReader.newClass(PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, "c", "java/lang/Object", null,
+				"o", "()V", PUBLIC | Opcodes.ACC_ABSTRACT));
+		return classes;
+	}
+
+	private static Path classpath(Path dir) throws IOException {
+		Path classpath = Files.createDirectories(dir.resolve("libraries"));
+		Map<String, byte[]> library = new LinkedHashMap<>();
+		library.put("lib/Base", TestJarReader.newClass(PUBLIC, "lib/Base", "java/lang/Object", null, "m", "()V", PUBLIC));
+		TestJarReader.writeJar(classpath.resolve("lib.jar"), library);
+		return classpath;
+	}
+
+	private static JarRootEntry read(Path jar, Path classpath, Path cache) throws IOException {
+		JarRootEntry root = new JarRootEntry(jar.toFile());
+		JarReader reader = new JarReader(root, classpath.toFile());
+		reader.setModelCache(cache);
+		// compares whatever came from the cache against a run without one
+		reader.setVerifyIncremental(true);
+		reader.apply();
+		return root;
+	}
+
+	private static List<Path> list(Path dir, String extension) throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.filter((p) -> p.toString().endsWith(extension)).sorted().collect(Collectors.toList());
+		}
+	}
+
+	@Test
+	public void roundTripsTheModel() throws IOException {
+		Path dir = Files.createTempDirectory("stitch-model-snapshot");
+		Path jar = TestJarReader.writeJar(dir.resolve("input.jar"), classes());
+		Path classpath = classpath(dir);
+		Path cache = dir.resolve("cache");
+
+		read(jar, classpath, cache);
+		List<Path> models = list(cache, ".model");
+		Assertions.assertEquals(1, models.size());
+
+		byte[] written = Files.readAllBytes(models.get(0));
+		ModelSnapshot snapshot = ModelSnapshot.read(models.get(0));
+		Assertions.assertNotNull(snapshot);
+		Assertions.assertArrayEquals(written, ModelSnapshot.encode(snapshot.jar, snapshot.classpath, snapshot.sources));
+
+		JarRootEntry jarCopy = new JarRootEntry(jar.toFile());
+		JarRootEntry classpathCopy = new JarRootEntry();
+		ModelSnapshot.adopt(snapshot.jar, jarCopy);
+		ModelSnapshot.adopt(snapshot.classpath, classpathCopy);
+		Assertions.assertArrayEquals(written, ModelSnapshot.encode(jarCopy, classpathCopy, Collections.emptyList()));
+
+		// loaded from the snapshot this time, and checked against a run without it
+		JarRootEntry loaded = read(jar, classpath, cache);
+		Assertions.assertTrue(loaded.getClass("a", false).getMethod("m()V").isAbsolutelyNonObfuscated());
+		Assertions.assertSame(loaded.getClass("b", false).getMethod("o()V"), loaded.getClass("c", false).getMethod("o()V"));
+	}
+
+	@Test
+	public void rejectsOtherVersions() throws IOException {
+		Path dir = Files.createTempDirectory("stitch-model-snapshot");
+		Path jar = TestJarReader.writeJar(dir.resolve("input.jar"), classes());
+		Path classpath = classpath(dir);
+		Path cache = dir.resolve("cache");
+
+		read(jar, classpath, cache);
+		Path model = list(cache, ".model").get(0);
+		byte[] data = Files.readAllBytes(model);
+		ByteBuffer.wrap(data).putInt(4, ByteBuffer.wrap(data).getInt(4) + 1);
+		Files.write(model, data);
+
+		Assertions.assertNull(ModelSnapshot.read(model));
+		// a run ignores the snapshot and replaces it
+		read(jar, classpath, cache);
+		Assertions.assertNotNull(ModelSnapshot.read(model));
+	}
+
+	@Test
+	public void changesLineageWithItsInputs() throws IOException {
+		Path dir = Files.createTempDirectory("stitch-model-snapshot");
+		Path classpath = classpath(dir);
+		String lineage = ModelSnapshot.getLineage(classpath.toFile(), true, false);
+
+		Assertions.assertEquals(lineage, ModelSnapshot.getLineage(classpath.toFile(), true, false));
+		Assertions.assertNotEquals(lineage, ModelSnapshot.getLineage(classpath.toFile(), false, false));
+		Assertions.assertNotEquals(lineage, ModelSnapshot.getLineage(classpath.toFile(), true, true));
+
+		Map<String, byte[]> library = new LinkedHashMap<>();
+		library.put("lib/Other", TestJarReader.newClass(PUBLIC, "lib/Other", "java/lang/Object", null));
+		TestJarReader.writeJar(classpath.resolve("other.jar"), library);
+		String withOther = ModelSnapshot.getLineage(classpath.toFile(), true, false);
+		Assertions.assertNotEquals(lineage, withOther);
+
+		// the index is only hashed here, so any file does
+		Path jdkIndex = Files.write(dir.resolve("jdk.bin"), new byte[] { 1 });
+		String previous = System.getProperty("stitch.jdkIndex");
+		System.setProperty("stitch.jdkIndex", jdkIndex.toString());
+		try {
+			String withIndex = ModelSnapshot.getLineage(classpath.toFile(), true, false);
+			Assertions.assertNotEquals(withOther, withIndex);
+
+			Files.write(jdkIndex, new byte[] { 2 });
+			Assertions.assertNotEquals(withIndex, ModelSnapshot.getLineage(classpath.toFile(), true, false));
+		} finally {
+			if (previous == null) {
+				System.clearProperty("stitch.jdkIndex");
+			} else {
+				System.setProperty("stitch.jdkIndex", previous);
+			}
+		}
+	}
+
+	@Test
+	public void missesAfterTheClasspathChanged() throws IOException {
+		Path dir = Files.createTempDirectory("stitch-model-snapshot");
+		Path jar = TestJarReader.writeJar(dir.resolve("input.jar"), classes());
+		Path classpath = classpath(dir);
+		Path cache = dir.resolve("cache");
+
+		read(jar, classpath, cache);
+		Map<String, byte[]> library = new LinkedHashMap<>();
+		library.put("lib/Base", TestJarReader.newClass(PUBLIC, "lib/Base", "java/lang/Object", null));
+		TestJarReader.writeJar(classpath.resolve("lib.jar"), library);
+
+		// lib/Base no longer declares m, so a stale snapshot would still call it non-obfuscated
+		JarRootEntry root = read(jar, classpath, cache);
+		Assertions.assertFalse(root.getClass("a", false).getMethod("m()V").isAbsolutelyNonObfuscated());
+		Assertions.assertEquals(2, list(cache, ".model").size());
+		Assertions.assertEquals(2, list(cache, ".latest").size());
+	}
+
+	@Test
+	public void keepsTheMostRecentlyUsedSnapshots() throws IOException {
+		Path cache = Files.createTempDirectory("stitch-model-snapshot");
+		List<String> names = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			String name = "name" + i;
+			names.add(name);
+			FileTime time = FileTime.fromMillis(1_600_000_000_000L + i * 1000L);
+			Files.setLastModifiedTime(Files.write(cache.resolve(name + ".parsed"), new byte[0]), time);
+			if (i != 5) {
+				Files.setLastModifiedTime(Files.write(cache.resolve(name + ".model"), new byte[0]), time);
+			}
+			Files.write(cache.resolve("lineage" + i + ".latest"), name.getBytes(StandardCharsets.UTF_8));
+		}
+		// loaded recently, so it outlives newer ones
+		ModelSnapshot.touch(cache.resolve("name0.model"));
+
+		ModelSnapshot.evict(cache);
+
+		Assertions.assertEquals(List.of(cache.resolve("name0.parsed"), cache.resolve("name3.parsed"), cache.resolve("name4.parsed"),
+				cache.resolve("name5.parsed"), cache.resolve("name6.parsed"), cache.resolve("name7.parsed"), cache.resolve("name8.parsed"),
+				cache.resolve("name9.parsed")), list(cache, ".parsed"));
+		Assertions.assertEquals(7, list(cache, ".model").size());
+		Assertions.assertEquals(List.of(cache.resolve("lineage0.latest"), cache.resolve("lineage3.latest"), cache.resolve("lineage4.latest"),
+				cache.resolve("lineage5.latest"), cache.resolve("lineage6.latest"), cache.resolve("lineage7.latest"),
+				cache.resolve("lineage8.latest"), cache.resolve("lineage9.latest")), list(cache, ".latest"));
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.tinyv1;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import net.fabricmc.mappings.EntryTriple;
+import net.fabricmc.mappings.MappingsProvider;
+import net.fabricmc.stitch.commands.GenMap;
+import net.fabricmc.stitch.commands.tinyv1.TinyV1Reader;
+
+public class TestTinyV1Reader {
+	private static final String MAPPINGS = "v1\tofficial\tintermediary\tnamed\n"
+					+ "# INTERMEDIARY-COUNTER class 3\n"
+					+ "CLASS\ta\tnet/minecraft/class_1\tnet/minecraft/Block\n"
+					+ "\n"
+					+ "FIELD\ta\tLb;\tc\tfield_1\tstate\n"
+					+ "METHOD\ta\t(Lb;I)V\td\tmethod_1\tupdate\n"
+					+ "CLASS\tb\tnet/minecraft/class_2\tnet/minecraft/State\n";
+
+	private static List<String> read(String mappings, int[] selection) throws IOException {
+		List<String> events = new ArrayList<>();
+
+		TinyV1Reader.read(new BufferedReader(new StringReader(mappings)), new TinyV1Reader.Visitor() {
+			@Override
+			public int[] start(List<String> namespaces) {
+				events.add("start " + namespaces);
+				return selection;
+			}
+
+			@Override
+			public void visitClass(String[] names) {
+				events.add("class " + Arrays.toString(names));
+			}
+
+			@Override
+			public void visitField(String owner, String desc, String[] names) {
+				events.add("field " + owner + " " + desc + " " + Arrays.toString(names));
+			}
+
+			@Override
+			public void visitMethod(String owner, String desc, String[] names) {
+				events.add("method " + owner + " " + desc + " " + Arrays.toString(names));
+			}
+
+			@Override
+			public void visitComment(String line) {
+				events.add("comment " + line);
+			}
+		});
+
+		return events;
+	}
+
+	@Test
+	public void readsAllNamespacesByDefault() throws IOException {
+		Assertions.assertEquals(Arrays.asList(
+						"start [official, intermediary, named]",
+						"comment # INTERMEDIARY-COUNTER class 3",
+						"class [a, net/minecraft/class_1, net/minecraft/Block]",
+						"field a Lb; [c, field_1, state]",
+						"method a (Lb;I)V [d, method_1, update]",
+						"class [b, net/minecraft/class_2, net/minecraft/State]"
+		), read(MAPPINGS, null));
+	}
+
+	@Test
+	public void passesSelectedNamespacesInRequestedOrder() throws IOException {
+		Assertions.assertEquals(Arrays.asList(
+						"start [official, intermediary, named]",
+						"comment # INTERMEDIARY-COUNTER class 3",
+						"class [net/minecraft/Block, a]",
+						"field a Lb; [state, c]",
+						"method a (Lb;I)V [update, d]",
+						"class [net/minecraft/State, b]"
+		), read(MAPPINGS, new int[] { 2, 0 }));
+	}
+
+	@Test
+	public void handlesLinesWithManyColumns() throws IOException {
+		StringBuilder header = new StringBuilder("v1");
+		StringBuilder line = new StringBuilder("CLASS");
+		for (int i = 0; i < 20; i++) {
+			header.append("\tns").append(i);
+			line.append("\tname").append(i);
+		}
+
+		List<String> events = read(header + "\n" + line + "\n", new int[] { 19 });
+		Assertions.assertEquals("class [name19]", events.get(1));
+	}
+
+	@Test
+	public void rejectsMissingColumns() {
+		String mappings = "v1\tofficial\tintermediary\nFIELD\ta\tI\tb\n";
+		Assertions.assertThrows(IOException.class, () -> read(mappings, null));
+	}
+
+	@Test
+	public void rejectsOtherFormats() {
+		Assertions.assertThrows(IOException.class, () -> read("tiny\t2\t0\tofficial\tintermediary\n", null));
+		Assertions.assertThrows(IOException.class, () -> read("", null));
+	}
+
+	@Test
+	public void remapsDescriptors() {
+		Map<String, String> classes = new HashMap<>();
+		classes.put("a", "net/minecraft/Block");
+		classes.put("b", "net/minecraft/State");
+
+		Assertions.assertEquals("(Lnet/minecraft/State;[Ljava/lang/String;I)Lnet/minecraft/Block;",
+						TinyV1Reader.remapDescriptor("(Lb;[Ljava/lang/String;I)La;", classes));
+		Assertions.assertEquals("(IJ)V", TinyV1Reader.remapDescriptor("(IJ)V", classes));
+	}
+
+	private static String describe(EntryTriple entry) {
+		return entry == null ? null : entry.getOwner() + "." + entry.getName() + " " + entry.getDesc();
+	}
+
+	@Test
+	public void loadsTheSameGenMapAsMappingsProvider() throws IOException {
+		int classCount = 50;
+		int memberCount = 12;
+		StringBuilder builder = new StringBuilder("v1\tofficial\tintermediary\tnamed\n");
+		for (int c = 0; c < classCount; c++) {
+			builder.append("CLASS\tc").append(c).append("\tnet/minecraft/class_").append(c).append("\tnet/minecraft/Named").append(c).append('\n');
+		}
+		for (int c = 0; c < classCount; c++) {
+			for (int m = 0; m < memberCount; m++) {
+				String kind = m % 3 == 0 ? "FIELD" : "METHOD";
+				String desc = m % 3 == 0 ? "Lc" + (c + m) % classCount + ";" : "(Lc" + (c + m) % classCount + ";[Ljava/lang/String;I)Lx;";
+				builder.append(kind).append("\tc").append(c).append('\t').append(desc).append("\tm").append(m)
+								.append('\t').append(kind.toLowerCase()).append('_').append(c * memberCount + m)
+								.append("\tnamed").append(m).append('\n');
+			}
+		}
+		builder.append("# INTERMEDIARY-COUNTER class ").append(classCount).append('\n');
+		String mappings = builder.toString();
+
+		GenMap expected = new GenMap();
+		expected.load(MappingsProvider.readTinyMappings(new ByteArrayInputStream(mappings.getBytes(StandardCharsets.UTF_8))), "official", "intermediary");
+		GenMap actual = new GenMap();
+		Map<String, Integer> counters = new HashMap<>();
+		actual.loadTiny(new BufferedReader(new StringReader(mappings)), "official", "intermediary", counters::put);
+
+		Assertions.assertEquals(Map.of("class", classCount), counters);
+		for (int c = 0; c < classCount; c++) {
+			Assertions.assertEquals(expected.getClass("c" + c), actual.getClass("c" + c));
+			for (int m = 0; m < memberCount; m++) {
+				if (m % 3 == 0) {
+					String desc = "Lc" + (c + m) % classCount + ";";
+					Assertions.assertEquals(describe(expected.getField("c" + c, "m" + m, desc)), describe(actual.getField("c" + c, "m" + m, desc)));
+				} else {
+					String desc = "(Lc" + (c + m) % classCount + ";[Ljava/lang/String;I)Lx;";
+					Assertions.assertEquals(describe(expected.getMethod("c" + c, "m" + m, desc)), describe(actual.getMethod("c" + c, "m" + m, desc)));
+				}
+			}
+		}
+		Assertions.assertEquals("net/minecraft/class_1.method_13 (Lnet/minecraft/class_2;[Ljava/lang/String;I)Lx;",
+						describe(actual.getMethod("c1", "m1", "(Lc2;[Ljava/lang/String;I)Lx;")));
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2016, 2017, 2018, 2019 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.stitch.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestZipClassSource {
+	private static byte[] randomBytes(int size, int seed) {
+		byte[] data = new byte[size];
+		Random random = new Random(seed);
+		for (int i = 0; i < size; i++) {
+			// a small alphabet so deflate has something to do
+			data[i] = (byte) ('a' + random.nextInt(6));
+		}
+		return data;
+	}
+
+	private static ZipEntry stored(String name, byte[] data) {
+		ZipEntry entry = new ZipEntry(name);
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		entry.setMethod(ZipEntry.STORED);
+		entry.setSize(data.length);
+		entry.setCompressedSize(data.length);
+		entry.setCrc(crc.getValue());
+		return entry;
+	}
+
+	private static byte[] zip(Map<ZipEntry, byte[]> entries) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipOutputStream out = new ZipOutputStream(bytes, StandardCharsets.UTF_8)) {
+			for (Map.Entry<ZipEntry, byte[]> entry : entries.entrySet()) {
+				out.putNextEntry(entry.getKey());
+				out.write(entry.getValue());
+				out.closeEntry();
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Path write(byte[] data) throws IOException {
+		Path file = Files.createTempFile("stitch-zip", ".jar");
+		file.toFile().deleteOnExit();
+		Files.write(file, data);
+		return file;
+	}
+
+	private static List<String> names(ClassSource source) {
+		List<String> names = new ArrayList<>();
+		for (ClassSource.Entry entry : source.getEntries()) {
+			names.add(entry.getName());
+		}
+		return names;
+	}
+
+	@Test
+	public void readsStoredAndDeflatedEntries() throws IOException {
+		byte[] deflated = randomBytes(100_000, 1);
+		byte[] stored = randomBytes(5_000, 2);
+		Map<ZipEntry, byte[]> entries = new LinkedHashMap<>();
+		entries.put(new ZipEntry("a/Deflated.class"), deflated);
+		entries.put(stored("a/Stored.class", stored), stored);
+		entries.put(new ZipEntry("a/Empty.class"), new byte[0]);
+		entries.put(stored("a/StoredEmpty.txt", new byte[0]), new byte[0]);
+
+		try (ClassSource source = ClassSource.open(write(zip(entries)))) {
+			Assertions.assertEquals(List.of("a/Deflated.class", "a/Stored.class", "a/Empty.class", "a/StoredEmpty.txt"), names(source));
+			Assertions.assertArrayEquals(deflated, source.getEntry("a/Deflated.class").read());
+			Assertions.assertArrayEquals(stored, source.getEntry("a/Stored.class").read());
+			Assertions.assertArrayEquals(new byte[0], source.getEntry("a/Empty.class").read());
+			Assertions.assertArrayEquals(new byte[0], source.getEntry("a/StoredEmpty.txt").read());
+			Assertions.assertEquals(3, source.getClassEntries().size());
+		}
+	}
+
+	@Test
+	public void skipsDirectoryEntries() throws IOException {
+		Map<ZipEntry, byte[]> entries = new LinkedHashMap<>();
+		entries.put(new ZipEntry("a/"), new byte[0]);
+		entries.put(new ZipEntry("a/b/"), new byte[0]);
+		entries.put(new ZipEntry("a/b/C.class"), randomBytes(10, 3));
+
+		try (ClassSource source = ClassSource.open(write(zip(entries)))) {
+			Assertions.assertEquals(List.of("a/b/C.class"), names(source));
+			Assertions.assertNull(source.getEntry("a/"));
+		}
+	}
+
+	@Test
+	public void decodesNonAsciiNames() throws IOException {
+		Map<ZipEntry, byte[]> entries = new LinkedHashMap<>();
+		entries.put(new ZipEntry("net/\u00fcn\u00efc\u00f8d\u00e9/Klasse\u20ac.class"), randomBytes(10, 4));
+		entries.put(new ZipEntry("\u65e5\u672c/\u540d\u524d.txt"), randomBytes(10, 5));
+
+		try (ClassSource source = ClassSource.open(write(zip(entries)))) {
+			Assertions.assertEquals(List.of("net/\u00fcn\u00efc\u00f8d\u00e9/Klasse\u20ac.class", "\u65e5\u672c/\u540d\u524d.txt"), names(source));
+			Assertions.assertArrayEquals(randomBytes(10, 5), source.getEntry("\u65e5\u672c/\u540d\u524d.txt").read());
+		}
+	}
+
+	@Test
+	public void readsArchivesWithPrependedData() throws IOException {
+		byte[] data = randomBytes(20_000, 6);
+		Map<ZipEntry, byte[]> entries = new LinkedHashMap<>();
+		entries.put(new ZipEntry("Main.class"), data);
+		entries.put(stored("res.txt", data), data);
+		byte[] zip = zip(entries);
+
+		byte[] prefix = "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes(StandardCharsets.UTF_8);
+		byte[] prefixed = new byte[prefix.length + zip.length];
+		System.arraycopy(prefix, 0, prefixed, 0, prefix.length);
+		System.arraycopy(zip, 0, prefixed, prefix.length, zip.length);
+
+		try (ClassSource source = ClassSource.open(write(prefixed))) {
+			Assertions.assertEquals(List.of("Main.class", "res.txt"), names(source));
+			Assertions.assertArrayEquals(data, source.getEntry("Main.class").read());
+			Assertions.assertArrayEquals(data, source.getEntry("res.txt").read());
+		}
+	}
+
+	@Test
+	public void readsZip64Archives() throws IOException {
+		// more entries than the classic end record can count makes ZipOutputStream write zip64 records
+		int count = 70_000;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+			for (int i = 0; i < count; i++) {
+				out.putNextEntry(new ZipEntry("c/C" + i + ".class"));
+				out.write(Integer.toString(i).getBytes(StandardCharsets.UTF_8));
+				out.closeEntry();
+			}
+		}
+
+		try (ClassSource source = ClassSource.open(write(bytes.toByteArray()))) {
+			Assertions.assertEquals(count, source.getEntries().size());
+			Assertions.assertEquals("c/C0.class", source.getEntries().get(0).getName());
+			Assertions.assertArrayEquals("69999".getBytes(StandardCharsets.UTF_8), source.getEntry("c/C69999.class").read());
+		}
+	}
+
+	@Test
+	public void readsEntriesFromSeveralThreads() throws Exception {
+		Map<ZipEntry, byte[]> entries = new LinkedHashMap<>();
+		for (int i = 0; i < 64; i++) {
+			entries.put(new ZipEntry("E" + i + ".class"), randomBytes(10_000, i));
+		}
+
+		try (ClassSource source = ClassSource.open(write(zip(entries)))) {
+			List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+			List<Thread> threads = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				Thread thread = new Thread(() -> {
+					try {
+						for (int i = 0; i < 64; i++) {
+							if (!java.util.Arrays.equals(randomBytes(10_000, i), source.getEntry("E" + i + ".class").read())) {
+								throw new AssertionError("E" + i);
+							}
+						}
+					} catch (Throwable e) {
+						failures.add(e);
+					}
+				});
+				threads.add(thread);
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			Assertions.assertEquals(Collections.emptyList(), failures);
+		}
+	}
+
+	@Test
+	public void reportsTimesLikeZipFileSystem() throws IOException {
+		long base = 1_600_000_000_000L;
+		Map<ZipEntry, byte[]> entries = new LinkedHashMap<>();
+
+		ZipEntry dosOnly = new ZipEntry("DosOnly.class");
+		dosOnly.setTime(base);
+		entries.put(dosOnly, new byte[1]);
+
+		ZipEntry modified = new ZipEntry("Modified.class");
+		modified.setLastModifiedTime(FileTime.fromMillis(base + 2_000));
+		entries.put(modified, new byte[1]);
+
+		ZipEntry all = new ZipEntry("All.class");
+		all.setLastModifiedTime(FileTime.fromMillis(base + 4_000));
+		all.setLastAccessTime(FileTime.fromMillis(base + 6_000));
+		all.setCreationTime(FileTime.fromMillis(base + 8_000));
+		entries.put(all, new byte[1]);
+
+		// outside the range of the extended timestamp field, so java.util.zip writes NTFS times
+		ZipEntry ntfs = new ZipEntry("Ntfs.class");
+		ntfs.setLastModifiedTime(FileTime.fromMillis(5_000_000_000_000L));
+		ntfs.setLastAccessTime(FileTime.fromMillis(5_000_000_001_000L));
+		ntfs.setCreationTime(FileTime.fromMillis(5_000_000_002_000L));
+		entries.put(ntfs, new byte[1]);
+
+		Path file = write(zip(entries));
+		try (ClassSource source = ClassSource.open(file);
+			FileSystem fs = FileSystems.newFileSystem(URI.create("jar:" + file.toUri()), Collections.emptyMap())) {
+			for (ClassSource.Entry entry : source.getEntries()) {
+				BasicFileAttributes attrs = Files.readAttributes(fs.getPath(entry.getName()), BasicFileAttributes.class);
+				Assertions.assertEquals(attrs.lastModifiedTime().toMillis(), entry.getLastModifiedTime().toMillis(), entry.getName());
+				Assertions.assertEquals(attrs.lastAccessTime().toMillis(), entry.getLastAccessTime().toMillis(), entry.getName());
+				Assertions.assertEquals(attrs.creationTime().toMillis(), entry.getCreationTime().toMillis(), entry.getName());
+			}
+		}
+	}
+
+	@Test
+	public void refusesToInflateAfterClose() throws IOException {
+		Map<ZipEntry, byte[]> entries = new LinkedHashMap<>();
+		entries.put(new ZipEntry("Deflated.class"), randomBytes(1_000, 7));
+
+		ClassSource source = ClassSource.open(write(zip(entries)));
+		ClassSource.Entry entry = source.getEntry("Deflated.class");
+		Assertions.assertArrayEquals(randomBytes(1_000, 7), entry.read());
+		source.close();
+
+		Assertions.assertThrows(IllegalStateException.class, entry::read);
+	}
+}